@@ -1,6 +1,10 @@
 package com.example.demo.model;
+import com.google.firebase.database.Exclude;
+import com.google.firebase.database.IgnoreExtraProperties;
 import jakarta.validation.constraints.NotBlank;
 
+// Checkout keeps its in-flight stock holds under books/<bookId>/checkoutHolds
+@IgnoreExtraProperties
 public class Book {
     private String bookId;
     private String userId;
@@ -22,6 +26,9 @@ public class Book {
     private String description;
     private String imageUrl;
     private int quantity;
+    private long createdAt; // listing time in epoch millis, 0 for listings created before it was recorded
+    private long updatedAt; // last backend write in epoch millis, used to catch up from a catalog snapshot
+    private Integer availableQuantity; // quantity less live cart reservations, filled in by the catalog and never stored
 
     // Empty Constructor (for Firebase)
     public Book() {
@@ -84,4 +91,15 @@ public class Book {
 
     public int getQuantity() { return quantity; }
     public void setQuantity(int quantity) { this.quantity = quantity; }
+
+    public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+
+    public long getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(long updatedAt) { this.updatedAt = updatedAt; }
+
+    @Exclude
+    public Integer getAvailableQuantity() { return availableQuantity; }
+    @Exclude
+    public void setAvailableQuantity(Integer availableQuantity) { this.availableQuantity = availableQuantity; }
 }
@@ -0,0 +1,204 @@
+package com.example.demo.controller;
+
+import com.example.demo.model.Book;
+import com.example.demo.model.BookFilter;
+import com.example.demo.model.BookPage;
+import com.example.demo.model.BookSuggestion;
+import com.example.demo.service.BookAutocompleteIndex;
+import com.example.demo.service.BookBitmapIndex;
+import com.example.demo.service.BookCache;
+import com.example.demo.service.BookCatalogIndex;
+import com.example.demo.service.BookColumnarSnapshot;
+import com.example.demo.service.BookFacetIndex;
+import com.example.demo.service.BookIsbnIndex;
+import com.example.demo.service.BookService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+@RestController
+@RequestMapping("/api/books")
+@CrossOrigin(origins = "http://localhost:5173")
+public class BookCatalogController {
+
+    private final BookService bookService;
+    private final BookCache bookCache;
+    private final BookFacetIndex facetIndex;
+    private final BookAutocompleteIndex autocompleteIndex;
+    private final BookBitmapIndex bitmapIndex;
+    private final BookIsbnIndex isbnIndex;
+    private final BookCatalogIndex catalogIndex;
+    private final BookColumnarSnapshot columnarSnapshot;
+
+    public BookCatalogController(BookService bookService, BookCache bookCache, BookFacetIndex facetIndex,
+                                 BookAutocompleteIndex autocompleteIndex, BookBitmapIndex bitmapIndex,
+                                 BookIsbnIndex isbnIndex, BookCatalogIndex catalogIndex,
+                                 BookColumnarSnapshot columnarSnapshot) {
+        this.bookService = bookService;
+        this.bookCache = bookCache;
+        this.facetIndex = facetIndex;
+        this.autocompleteIndex = autocompleteIndex;
+        this.bitmapIndex = bitmapIndex;
+        this.isbnIndex = isbnIndex;
+        this.catalogIndex = catalogIndex;
+        this.columnarSnapshot = columnarSnapshot;
+    }
+
+    // Multipart with a "book" JSON part and an optional "imageFile"; 504 when the add timed out before the listing write
+    @PostMapping(value = "/add-async", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> addBookAsync(@RequestPart("book") Book book,
+            @RequestPart(value = "imageFile", required = false) MultipartFile imageFile,
+            @RequestParam(defaultValue = "true") boolean isSeller) {
+        try {
+            return bookService.addBookAsync(book, imageFile, isSeller)
+                    .thenApply(bookId -> {
+                        Map<String, Object> body = new HashMap<>();
+                        body.put("bookId", bookId);
+                        return ResponseEntity.ok(body);
+                    })
+                    .exceptionally(e -> {
+                        Throwable cause = e.getCause() != null ? e.getCause() : e;
+                        return ResponseEntity.status(cause instanceof TimeoutException ? 504 : 500).build();
+                    });
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+    }
+
+    @GetMapping("/available-books/page")
+    public CompletableFuture<ResponseEntity<BookPage>> getBooksByRolePage(@RequestParam String role,
+            @RequestParam(required = false) String userEmail,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            return bookService.getBooksByRolePage(role, userEmail, cursor, limit)
+                    .thenApply(ResponseEntity::ok)
+                    .exceptionally(e -> ResponseEntity.status(500).build());
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+    }
+
+    // sort is one of newest, price_asc, price_desc, quantity
+    @GetMapping("/available-books/sorted")
+    public CompletableFuture<ResponseEntity<BookPage>> getSortedBooksPage(@RequestParam String role,
+            @RequestParam(required = false) String userEmail,
+            @RequestParam(defaultValue = "newest") String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            return bookService.getSortedBooksPage(role, userEmail, sort, cursor, limit)
+                    .thenApply(ResponseEntity::ok)
+                    .exceptionally(e -> ResponseEntity.status(500).build());
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+    }
+
+    @GetMapping("/search/page")
+    public CompletableFuture<ResponseEntity<BookPage>> searchBooksPage(@RequestParam String query,
+            @RequestParam(required = false) String userEmail,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            return bookService.searchBooksPage(query, userEmail, cursor, limit)
+                    .thenApply(ResponseEntity::ok)
+                    .exceptionally(e -> ResponseEntity.status(500).build());
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+    }
+
+    // Without a body (or with an empty list) every book owned by userEmail is moved to the new status
+    @PostMapping("/status/batch")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> updateBookStatuses(@RequestParam String userEmail,
+            @RequestParam String status,
+            @RequestBody(required = false) List<String> bookIds) {
+        return bookService.updateBookStatuses(userEmail, bookIds, status)
+                .thenApply(ResponseEntity::ok)
+                .exceptionally(e -> ResponseEntity.status(500).build());
+    }
+
+    @GetMapping("/search/fuzzy")
+    public CompletableFuture<ResponseEntity<List<Book>>> searchBooksFuzzy(@RequestParam String query,
+            @RequestParam(required = false) String userEmail) {
+        return bookService.searchBooksFuzzy(query, userEmail)
+                .thenApply(ResponseEntity::ok)
+                .exceptionally(e -> ResponseEntity.status(500).build());
+    }
+
+    // e.g. /filter?genre=fiction&genre=poetry&status=available&minPrice=100&maxPrice=500
+    @GetMapping("/filter")
+    public ResponseEntity<Map<String, Object>> filterBooks(@ModelAttribute BookFilter filter) {
+        return ResponseEntity.ok(bitmapIndex.filter(filter));
+    }
+
+    // Every listing of the edition; accepts ISBN-10 or ISBN-13, with or without hyphens
+    @GetMapping("/isbn/{isbn}")
+    public ResponseEntity<List<Book>> getBooksByIsbn(@PathVariable String isbn) {
+        try {
+            return ResponseEntity.ok(isbnIndex.listings(isbn));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/autocomplete")
+    public ResponseEntity<List<BookSuggestion>> autocomplete(@RequestParam String prefix,
+            @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(autocompleteIndex.complete(prefix, limit));
+    }
+
+    // status may repeat or be omitted for counts across every status
+    @GetMapping("/facets")
+    public ResponseEntity<Map<String, Map<String, Map<String, Long>>>> getFacets(
+            @RequestParam(required = false) List<String> status) {
+        List<String> statuses = new ArrayList<>();
+        if (status != null) {
+            for (String value : status) {
+                statuses.add(value.trim().toLowerCase());
+            }
+        }
+        return ResponseEntity.ok(facetIndex.getFacets(statuses));
+    }
+
+    // groupBy is one of genre, condition, status; owner narrows to one seller's books
+    @GetMapping("/analytics")
+    public ResponseEntity<Map<String, Map<String, Object>>> getAnalytics(@RequestParam String groupBy,
+            @RequestParam(required = false) String owner,
+            @RequestParam(required = false) List<String> status) {
+        try {
+            return ResponseEntity.ok(columnarSnapshot.aggregate(groupBy, owner, status));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/cache-stats")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        return ResponseEntity.ok(bookCache.getStats());
+    }
+
+    // Estimated heap of the resident catalog, compact records against plain Book objects
+    @GetMapping("/catalog-footprint")
+    public ResponseEntity<Map<String, Object>> getCatalogFootprint() {
+        return ResponseEntity.ok(catalogIndex.getFootprint());
+    }
+
+    // Measured heap of a sample built both ways; forces full GCs, so for occasional use
+    @GetMapping("/catalog-footprint/measured")
+    public ResponseEntity<Map<String, Object>> measureCatalogFootprint(@RequestParam(defaultValue = "1000") int sample) {
+        if (sample <= 0 || sample > 100000) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(catalogIndex.measureFootprint(sample));
+    }
+}
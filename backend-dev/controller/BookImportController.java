@@ -0,0 +1,37 @@
+package com.example.demo.controller;
+
+import com.example.demo.model.BookImportResult;
+import com.example.demo.service.BookImportService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+@RequestMapping("/api/books/import")
+@CrossOrigin(origins = "http://localhost:5173")
+public class BookImportController {
+
+    private final BookImportService bookImportService;
+
+    public BookImportController(BookImportService bookImportService) {
+        this.bookImportService = bookImportService;
+    }
+
+    // format is "csv" (header row required) or "jsonl"; defaults from the file extension
+    @PostMapping
+    public CompletableFuture<ResponseEntity<BookImportResult>> importBooks(@RequestParam MultipartFile file,
+            @RequestParam(required = false) String format,
+            @RequestParam(defaultValue = "true") boolean isSeller) throws IOException {
+        String name = file.getOriginalFilename() != null ? file.getOriginalFilename().toLowerCase() : "";
+        boolean jsonLines = format != null
+                ? format.equalsIgnoreCase("jsonl") || format.equalsIgnoreCase("json")
+                : name.endsWith(".jsonl") || name.endsWith(".json");
+
+        return bookImportService.importBooks(file.getInputStream(), jsonLines, isSeller)
+                .thenApply(ResponseEntity::ok)
+                .exceptionally(e -> ResponseEntity.status(500).build());
+    }
+}
@@ -1,7 +1,9 @@
 package com.example.demo.controller;
 
 import com.example.demo.model.CartItem;
+import com.example.demo.model.CartView;
 import com.example.demo.service.CartService;
+import com.example.demo.service.CheckoutService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -14,18 +16,31 @@ import java.util.concurrent.CompletableFuture;
 
 public class CartController {
     private final CartService cartService;
+    private final CheckoutService checkoutService;
 
-    public CartController(CartService cartService) {
+    public CartController(CartService cartService, CheckoutService checkoutService) {
         this.cartService = cartService;
+        this.checkoutService = checkoutService;
     }
 
+    // 409 when the copies are not available to reserve
     @PostMapping("/add")
     public CompletableFuture<ResponseEntity<String>> addToCart(@RequestParam String userEmail,
                                                                 @RequestParam String bookId,
                                                                 @RequestParam int quantity) {
-        return cartService.addToCart(userEmail, bookId, quantity)
-                .thenApply(unused -> ResponseEntity.ok("Book added to cart."))
-                .exceptionally(e -> ResponseEntity.status(500).body("Error: " + e.getMessage()));
+        try {
+            return cartService.addToCart(userEmail, bookId, quantity)
+                    .thenApply(unused -> ResponseEntity.ok("Book added to cart."))
+                    .exceptionally(e -> {
+                        Throwable cause = e.getCause() != null ? e.getCause() : e;
+                        if (cause instanceof IllegalStateException) {
+                            return ResponseEntity.status(409).body("Error: " + cause.getMessage());
+                        }
+                        return ResponseEntity.status(500).body("Error: " + cause.getMessage());
+                    });
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(e.getMessage()));
+        }
     }
 
     @DeleteMapping("/remove")
@@ -43,4 +58,31 @@ public class CartController {
                 .thenApply(ResponseEntity::ok)
                 .exceptionally(e -> ResponseEntity.status(500).build());
     }
+
+    // Cart lines joined with their books, line totals and availability
+    @GetMapping("/view")
+    public CompletableFuture<ResponseEntity<CartView>> getCartView(@RequestParam String userEmail) {
+        return cartService.getCartView(userEmail)
+                .thenApply(ResponseEntity::ok)
+                .exceptionally(e -> ResponseEntity.status(500).build());
+    }
+
+    // Send the same checkoutId when retrying; a placed order is returned instead of buying twice
+    @PostMapping("/checkout")
+    public CompletableFuture<ResponseEntity<Object>> checkout(@RequestParam String userEmail,
+                                                              @RequestParam(required = false) String checkoutId) {
+        try {
+            return checkoutService.checkout(userEmail, checkoutId)
+                    .<ResponseEntity<Object>>thenApply(ResponseEntity::ok)
+                    .exceptionally(e -> {
+                        Throwable cause = e.getCause() != null ? e.getCause() : e;
+                        if (cause instanceof IllegalStateException) {
+                            return ResponseEntity.status(409).body("Error: " + cause.getMessage());
+                        }
+                        return ResponseEntity.status(500).body("Error: " + cause.getMessage());
+                    });
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(e.getMessage()));
+        }
+    }
 }
@@ -0,0 +1,46 @@
+package com.example.demo.controller;
+
+import com.example.demo.model.SavedSearch;
+import com.example.demo.service.SavedSearchService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+@RequestMapping("/api/saved-searches")
+@CrossOrigin(origins = "http://localhost:5173")
+
+public class SavedSearchController {
+    private final SavedSearchService savedSearchService;
+
+    public SavedSearchController(SavedSearchService savedSearchService) {
+        this.savedSearchService = savedSearchService;
+    }
+
+    @PostMapping("/add")
+    public CompletableFuture<ResponseEntity<String>> saveSearch(@RequestParam String userEmail,
+                                                                @RequestBody SavedSearch search) {
+        try {
+            return savedSearchService.saveSearch(userEmail, search)
+                    .thenApply(ResponseEntity::ok)
+                    .exceptionally(e -> ResponseEntity.status(500).body("Error: " + e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/remove")
+    public CompletableFuture<ResponseEntity<String>> deleteSearch(@RequestParam String userEmail,
+                                                                  @RequestParam String searchId) {
+        return savedSearchService.deleteSearch(userEmail, searchId)
+                .thenApply(unused -> ResponseEntity.ok("Saved search removed."))
+                .exceptionally(e -> ResponseEntity.status(500).body("Error: " + e.getMessage()));
+    }
+
+    @GetMapping("/get")
+    public ResponseEntity<List<SavedSearch>> getSearches(@RequestParam String userEmail) {
+        return ResponseEntity.ok(savedSearchService.getSearches(userEmail));
+    }
+}
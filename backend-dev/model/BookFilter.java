@@ -0,0 +1,40 @@
+package com.example.demo.model;
+
+import java.util.List;
+
+/**
+ * Filter criteria bound from query parameters. Values within one attribute are OR-ed,
+ * attributes are AND-ed; null or empty criteria are ignored.
+ */
+public class BookFilter {
+    private List<String> genre;
+    private List<String> condition;
+    private List<String> status;
+    private String owner;
+    private Double minPrice;
+    private Double maxPrice;
+    private int limit = 100;
+
+    public BookFilter() {}
+
+    public List<String> getGenre() { return genre; }
+    public void setGenre(List<String> genre) { this.genre = genre; }
+
+    public List<String> getCondition() { return condition; }
+    public void setCondition(List<String> condition) { this.condition = condition; }
+
+    public List<String> getStatus() { return status; }
+    public void setStatus(List<String> status) { this.status = status; }
+
+    public String getOwner() { return owner; }
+    public void setOwner(String owner) { this.owner = owner; }
+
+    public Double getMinPrice() { return minPrice; }
+    public void setMinPrice(Double minPrice) { this.minPrice = minPrice; }
+
+    public Double getMaxPrice() { return maxPrice; }
+    public void setMaxPrice(Double maxPrice) { this.maxPrice = maxPrice; }
+
+    public int getLimit() { return limit; }
+    public void setLimit(int limit) { this.limit = limit; }
+}
@@ -0,0 +1,37 @@
+package com.example.demo.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BookImportResult {
+    private int totalRows;
+    private int imported;
+    private int failed;
+    private int batches;
+    private long elapsedMillis;
+    private double rowsPerSecond;
+    private List<BookImportRowResult> rows = new ArrayList<>();
+
+    public BookImportResult() {}
+
+    public int getTotalRows() { return totalRows; }
+    public void setTotalRows(int totalRows) { this.totalRows = totalRows; }
+
+    public int getImported() { return imported; }
+    public void setImported(int imported) { this.imported = imported; }
+
+    public int getFailed() { return failed; }
+    public void setFailed(int failed) { this.failed = failed; }
+
+    public int getBatches() { return batches; }
+    public void setBatches(int batches) { this.batches = batches; }
+
+    public long getElapsedMillis() { return elapsedMillis; }
+    public void setElapsedMillis(long elapsedMillis) { this.elapsedMillis = elapsedMillis; }
+
+    public double getRowsPerSecond() { return rowsPerSecond; }
+    public void setRowsPerSecond(double rowsPerSecond) { this.rowsPerSecond = rowsPerSecond; }
+
+    public List<BookImportRowResult> getRows() { return rows; }
+    public void setRows(List<BookImportRowResult> rows) { this.rows = rows; }
+}
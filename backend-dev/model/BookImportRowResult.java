@@ -0,0 +1,29 @@
+package com.example.demo.model;
+
+public class BookImportRowResult {
+    private int row;
+    private String status; // "created", "merged", "failed"
+    private String bookId;
+    private String message;
+
+    public BookImportRowResult() {}
+
+    public BookImportRowResult(int row, String status, String bookId, String message) {
+        this.row = row;
+        this.status = status;
+        this.bookId = bookId;
+        this.message = message;
+    }
+
+    public int getRow() { return row; }
+    public void setRow(int row) { this.row = row; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public String getBookId() { return bookId; }
+    public void setBookId(String bookId) { this.bookId = bookId; }
+
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+}
@@ -0,0 +1,21 @@
+package com.example.demo.model;
+
+import java.util.List;
+
+public class BookPage {
+    private List<Book> books;
+    private String nextCursor; // null when this is the last page
+
+    public BookPage() {}
+
+    public BookPage(List<Book> books, String nextCursor) {
+        this.books = books;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Book> getBooks() { return books; }
+    public void setBooks(List<Book> books) { this.books = books; }
+
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
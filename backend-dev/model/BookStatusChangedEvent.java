@@ -0,0 +1,29 @@
+package com.example.demo.model;
+
+/**
+ * Published after a status write has been committed. Carries the book as it now stands,
+ * so listeners can update their own structures without reading it back.
+ */
+public class BookStatusChangedEvent {
+    private final Book book;
+    private final String previousStatus;
+    private final String newStatus;
+    private final long changedAt;
+
+    public BookStatusChangedEvent(Book book, String previousStatus, String newStatus, long changedAt) {
+        this.book = book;
+        this.previousStatus = previousStatus;
+        this.newStatus = newStatus;
+        this.changedAt = changedAt;
+    }
+
+    public Book getBook() { return book; }
+
+    public String getBookId() { return book.getBookId(); }
+
+    public String getPreviousStatus() { return previousStatus; }
+
+    public String getNewStatus() { return newStatus; }
+
+    public long getChangedAt() { return changedAt; }
+}
@@ -0,0 +1,24 @@
+package com.example.demo.model;
+
+public class BookSuggestion {
+    private String text;
+    private String type; // "title" or "author"
+    private long weight; // live listings carrying this title or author
+
+    public BookSuggestion() {}
+
+    public BookSuggestion(String text, String type, long weight) {
+        this.text = text;
+        this.type = type;
+        this.weight = weight;
+    }
+
+    public String getText() { return text; }
+    public void setText(String text) { this.text = text; }
+
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+
+    public long getWeight() { return weight; }
+    public void setWeight(long weight) { this.weight = weight; }
+}
@@ -0,0 +1,49 @@
+package com.example.demo.model;
+
+public class CartLine {
+    private String bookId;
+    private int quantity;
+    private long addedAt;
+    private Book book; // null when the book no longer exists
+    private double pricePerUnit;
+    private double lineTotal;
+    private int availableQuantity;
+    private boolean available; // the book is on sale and has enough copies for this line
+
+    public CartLine() {}
+
+    public CartLine(CartItem item, Book book, int availableQuantity, boolean available) {
+        this.bookId = item.getBookId();
+        this.quantity = item.getQuantity();
+        this.addedAt = item.getAddedAt();
+        this.book = book;
+        this.pricePerUnit = book != null && book.getPrice() != null ? book.getPrice() : 0.0;
+        this.lineTotal = pricePerUnit * quantity;
+        this.availableQuantity = availableQuantity;
+        this.available = available;
+    }
+
+    public String getBookId() { return bookId; }
+    public void setBookId(String bookId) { this.bookId = bookId; }
+
+    public int getQuantity() { return quantity; }
+    public void setQuantity(int quantity) { this.quantity = quantity; }
+
+    public long getAddedAt() { return addedAt; }
+    public void setAddedAt(long addedAt) { this.addedAt = addedAt; }
+
+    public Book getBook() { return book; }
+    public void setBook(Book book) { this.book = book; }
+
+    public double getPricePerUnit() { return pricePerUnit; }
+    public void setPricePerUnit(double pricePerUnit) { this.pricePerUnit = pricePerUnit; }
+
+    public double getLineTotal() { return lineTotal; }
+    public void setLineTotal(double lineTotal) { this.lineTotal = lineTotal; }
+
+    public int getAvailableQuantity() { return availableQuantity; }
+    public void setAvailableQuantity(int availableQuantity) { this.availableQuantity = availableQuantity; }
+
+    public boolean isAvailable() { return available; }
+    public void setAvailable(boolean available) { this.available = available; }
+}
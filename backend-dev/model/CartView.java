@@ -0,0 +1,42 @@
+package com.example.demo.model;
+
+import java.util.List;
+
+public class CartView {
+    private String userEmail;
+    private List<CartLine> lines;
+    private int itemCount;
+    private double totalAmount; // sum of the line totals of available lines
+    private boolean allAvailable;
+
+    public CartView() {}
+
+    public CartView(String userEmail, List<CartLine> lines) {
+        this.userEmail = userEmail;
+        this.lines = lines;
+        this.allAvailable = true;
+        for (CartLine line : lines) {
+            itemCount += line.getQuantity();
+            if (line.isAvailable()) {
+                totalAmount += line.getLineTotal();
+            } else {
+                allAvailable = false;
+            }
+        }
+    }
+
+    public String getUserEmail() { return userEmail; }
+    public void setUserEmail(String userEmail) { this.userEmail = userEmail; }
+
+    public List<CartLine> getLines() { return lines; }
+    public void setLines(List<CartLine> lines) { this.lines = lines; }
+
+    public int getItemCount() { return itemCount; }
+    public void setItemCount(int itemCount) { this.itemCount = itemCount; }
+
+    public double getTotalAmount() { return totalAmount; }
+    public void setTotalAmount(double totalAmount) { this.totalAmount = totalAmount; }
+
+    public boolean isAllAvailable() { return allAvailable; }
+    public void setAllAvailable(boolean allAvailable) { this.allAvailable = allAvailable; }
+}
@@ -1,6 +1,7 @@
 package com.example.demo.model;
 
 import java.util.List;
+import java.util.Map;
 
 public class Order {
     private String orderId;
@@ -9,6 +10,8 @@ public class Order {
     private double totalAmount;
     private long orderTimestamp;
     private String status; // e.g., "Pending", "Paid", "Shipped"
+    private String attemptId; // checkout attempt holding a Pending order, null once placed
+    private Map<String, Map<String, Integer>> stockHolds; // attemptId -> bookId -> copies taken while Pending
 
     public Order() {}
 
@@ -39,4 +42,10 @@ public class Order {
 
     public String getStatus() { return status; }
     public void setStatus(String status) { this.status = status; }
+
+    public String getAttemptId() { return attemptId; }
+    public void setAttemptId(String attemptId) { this.attemptId = attemptId; }
+
+    public Map<String, Map<String, Integer>> getStockHolds() { return stockHolds; }
+    public void setStockHolds(Map<String, Map<String, Integer>> stockHolds) { this.stockHolds = stockHolds; }
 }
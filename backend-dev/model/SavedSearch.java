@@ -0,0 +1,42 @@
+package com.example.demo.model;
+
+/**
+ * A buyer's standing query: free-text terms plus optional genre, condition and price filters.
+ * Stored under savedSearches/<sanitized email>/<searchId>.
+ */
+public class SavedSearch {
+    private String searchId;
+    private String userEmail;
+    private String query;
+    private String genre;
+    private String condition;
+    private Double minPrice;
+    private Double maxPrice;
+    private long createdAt;
+
+    public SavedSearch() {}
+
+    public String getSearchId() { return searchId; }
+    public void setSearchId(String searchId) { this.searchId = searchId; }
+
+    public String getUserEmail() { return userEmail; }
+    public void setUserEmail(String userEmail) { this.userEmail = userEmail; }
+
+    public String getQuery() { return query; }
+    public void setQuery(String query) { this.query = query; }
+
+    public String getGenre() { return genre; }
+    public void setGenre(String genre) { this.genre = genre; }
+
+    public String getCondition() { return condition; }
+    public void setCondition(String condition) { this.condition = condition; }
+
+    public Double getMinPrice() { return minPrice; }
+    public void setMinPrice(Double minPrice) { this.minPrice = minPrice; }
+
+    public Double getMaxPrice() { return maxPrice; }
+    public void setMaxPrice(Double maxPrice) { this.maxPrice = maxPrice; }
+
+    public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+}
@@ -0,0 +1,212 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.model.BookSuggestion;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Prefix trie over normalized titles and author names, weighted by how many listings carry them.
+ * A phrase is reachable from the start of each of its words. Every node caches its best
+ * completions; a change only marks the nodes on its paths dirty, and they are recomputed on the next lookup.
+ */
+@Service
+public class BookAutocompleteIndex implements BookCatalogIndex.CatalogListener {
+
+    static final int MAX_SUGGESTIONS = 10;
+
+    private final Node root = new Node(null, '\0');
+    private final Map<String, Phrase> phrases = new HashMap<>();
+
+    public BookAutocompleteIndex(BookCatalogIndex catalogIndex) {
+        catalogIndex.addListener(this);
+    }
+
+    @Override
+    public synchronized void onBookUpserted(Book previous, Book current) {
+        if (previous != null) {
+            adjust("title", previous.getName(), -1);
+            adjust("author", previous.getAuthor(), -1);
+        }
+        adjust("title", current.getName(), 1);
+        adjust("author", current.getAuthor(), 1);
+    }
+
+    @Override
+    public synchronized void onBookRemoved(Book previous) {
+        adjust("title", previous.getName(), -1);
+        adjust("author", previous.getAuthor(), -1);
+    }
+
+    public synchronized List<BookSuggestion> complete(String prefix, int limit) {
+        String key = normalize(prefix);
+        List<BookSuggestion> suggestions = new ArrayList<>();
+        if (key.isEmpty()) {
+            return suggestions;
+        }
+
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.children.get(key.charAt(i));
+        }
+        if (node == null) {
+            return suggestions;
+        }
+
+        for (Phrase phrase : node.best()) {
+            if (suggestions.size() == Math.min(limit, MAX_SUGGESTIONS)) {
+                break;
+            }
+            suggestions.add(new BookSuggestion(phrase.display, phrase.type, phrase.weight));
+        }
+        return suggestions;
+    }
+
+    private void adjust(String type, String text, int delta) {
+        String normalized = normalize(text);
+        if (normalized.isEmpty()) {
+            return;
+        }
+        String id = type + ":" + normalized;
+        Phrase phrase = phrases.get(id);
+
+        if (phrase == null) {
+            if (delta <= 0) {
+                return;
+            }
+            phrase = new Phrase(type, text.trim(), normalized);
+            phrases.put(id, phrase);
+            phrase.weight = delta;
+            for (String key : keys(normalized)) {
+                insert(key, phrase);
+            }
+            return;
+        }
+
+        phrase.weight += delta;
+        if (phrase.weight <= 0) {
+            phrases.remove(id);
+            for (String key : keys(normalized)) {
+                remove(key, phrase);
+            }
+        } else {
+            for (String key : keys(normalized)) {
+                markDirty(key);
+            }
+        }
+    }
+
+    // The phrase itself plus the suffix starting at each later word
+    private List<String> keys(String normalized) {
+        List<String> keys = new ArrayList<>();
+        keys.add(normalized);
+        for (int i = normalized.indexOf(' '); i >= 0; i = normalized.indexOf(' ', i + 1)) {
+            keys.add(normalized.substring(i + 1));
+        }
+        return keys;
+    }
+
+    private void insert(String key, Phrase phrase) {
+        Node node = root;
+        node.dirty = true;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            Node parent = node;
+            node = parent.children.computeIfAbsent(c, k -> new Node(parent, c));
+            node.dirty = true;
+        }
+        node.terminals.add(phrase);
+    }
+
+    private void remove(String key, Phrase phrase) {
+        Node node = find(key);
+        if (node == null) {
+            return;
+        }
+        node.terminals.remove(phrase);
+        // Prune nodes that no longer lead anywhere, then dirty the rest of the path
+        while (node.parent != null) {
+            Node parent = node.parent;
+            if (node.terminals.isEmpty() && node.children.isEmpty()) {
+                parent.children.remove(node.label);
+            }
+            node.dirty = true;
+            node = parent;
+        }
+        root.dirty = true;
+    }
+
+    private void markDirty(String key) {
+        Node node = root;
+        node.dirty = true;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.children.get(key.charAt(i));
+            if (node != null) {
+                node.dirty = true;
+            }
+        }
+    }
+
+    private Node find(String key) {
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.children.get(key.charAt(i));
+        }
+        return node;
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return String.join(" ", BookSearchIndex.tokenize(text));
+    }
+
+    private static final Comparator<Phrase> BY_WEIGHT = Comparator.<Phrase>comparingLong(p -> -p.weight)
+            .thenComparing(p -> p.normalized)
+            .thenComparing(p -> p.type);
+
+    private static class Phrase {
+        final String type;
+        final String display;
+        final String normalized;
+        long weight;
+
+        Phrase(String type, String display, String normalized) {
+            this.type = type;
+            this.display = display;
+            this.normalized = normalized;
+        }
+    }
+
+    private static class Node {
+        final Node parent;
+        final char label;
+        final Map<Character, Node> children = new HashMap<>();
+        final Set<Phrase> terminals = new HashSet<>();
+        List<Phrase> best = new ArrayList<>();
+        boolean dirty;
+
+        Node(Node parent, char label) {
+            this.parent = parent;
+            this.label = label;
+        }
+
+        // Top completions of this subtree, merged from the children's cached lists
+        List<Phrase> best() {
+            if (!dirty) {
+                return best;
+            }
+            Set<Phrase> candidates = new HashSet<>(terminals);
+            for (Node child : children.values()) {
+                candidates.addAll(child.best());
+            }
+            List<Phrase> ranked = new ArrayList<>(candidates);
+            ranked.sort(BY_WEIGHT);
+            best = ranked.size() > MAX_SUGGESTIONS ? new ArrayList<>(ranked.subList(0, MAX_SUGGESTIONS)) : ranked;
+            dirty = false;
+            return best;
+        }
+    }
+}
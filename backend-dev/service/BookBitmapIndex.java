@@ -0,0 +1,228 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.model.BookFilter;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Bitmap indexes for multi-attribute filtering. Every book gets a dense ordinal (reused after
+ * removal, so the bitmaps stay compact); each genre, condition, status and owner value keeps a
+ * BitSet of ordinals, and prices are kept in an ordinal array sorted by price for range predicates,
+ * patched by binary-search insert and remove only when a book's price or presence changes.
+ * A filter is the intersection of the OR of each attribute's value bitmaps. Only ids and prices are
+ * kept per ordinal; matching books are read back from the catalog.
+ */
+@Service
+public class BookBitmapIndex implements BookCatalogIndex.CatalogListener {
+
+    private static final int MAX_RESULTS = 500;
+
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<String> idsByOrdinal = new ArrayList<>();
+    private double[] priceByOrdinal = new double[64]; // NaN where the book has no price
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+    private final BitSet live = new BitSet();
+
+    private final Map<String, BitSet> byGenre = new HashMap<>();
+    private final Map<String, BitSet> byCondition = new HashMap<>();
+    private final Map<String, BitSet> byStatus = new HashMap<>();
+    private final Map<String, BitSet> byOwner = new HashMap<>();
+
+    // Ordinals of live priced books sorted by price, in the first pricedCount slots
+    private int[] ordinalsByPrice = new int[64];
+    private double[] sortedPrices = new double[64];
+    private int pricedCount;
+
+    private final BookCatalogIndex catalogIndex;
+
+    public BookBitmapIndex(BookCatalogIndex catalogIndex) {
+        this.catalogIndex = catalogIndex;
+        catalogIndex.addListener(this);
+    }
+
+    @Override
+    public synchronized void onBookUpserted(Book previous, Book current) {
+        Integer ordinal = ordinals.get(current.getBookId());
+        double oldPrice = ordinal != null ? priceByOrdinal[ordinal] : Double.NaN;
+        if (ordinal != null) {
+            if (previous != null) {
+                unlink(ordinal, previous);
+            }
+        } else {
+            ordinal = freeOrdinals.isEmpty() ? idsByOrdinal.size() : freeOrdinals.pop();
+            if (ordinal == idsByOrdinal.size()) {
+                idsByOrdinal.add(null);
+                if (ordinal == priceByOrdinal.length) {
+                    priceByOrdinal = Arrays.copyOf(priceByOrdinal, ordinal * 2);
+                }
+            }
+            ordinals.put(current.getBookId(), ordinal);
+        }
+        idsByOrdinal.set(ordinal, current.getBookId());
+        double newPrice = current.getPrice() != null ? current.getPrice() : Double.NaN;
+        if (Double.compare(oldPrice, newPrice) != 0) {
+            if (!Double.isNaN(oldPrice)) {
+                removePrice(ordinal, oldPrice);
+            }
+            if (!Double.isNaN(newPrice)) {
+                insertPrice(ordinal, newPrice);
+            }
+        }
+        priceByOrdinal[ordinal] = newPrice;
+        live.set(ordinal);
+        link(ordinal, current);
+    }
+
+    @Override
+    public synchronized void onBookRemoved(Book previous) {
+        Integer ordinal = ordinals.remove(previous.getBookId());
+        if (ordinal == null) {
+            return;
+        }
+        unlink(ordinal, previous);
+        if (!Double.isNaN(priceByOrdinal[ordinal])) {
+            removePrice(ordinal, priceByOrdinal[ordinal]);
+        }
+        idsByOrdinal.set(ordinal, null);
+        live.clear(ordinal);
+        freeOrdinals.push(ordinal);
+    }
+
+    /** Books matching the filter (at most its limit) and the total number of matches. */
+    public synchronized Map<String, Object> filter(BookFilter filter) {
+        BitSet matches = (BitSet) live.clone();
+        and(matches, byGenre, filter.getGenre());
+        and(matches, byCondition, filter.getCondition());
+        and(matches, byStatus, filter.getStatus());
+        if (filter.getOwner() != null && !filter.getOwner().isBlank()) {
+            and(matches, byOwner, List.of(filter.getOwner()));
+        }
+        if (filter.getMinPrice() != null || filter.getMaxPrice() != null) {
+            matches.and(priceRange(filter.getMinPrice(), filter.getMaxPrice()));
+        }
+
+        int limit = Math.max(1, Math.min(filter.getLimit(), MAX_RESULTS));
+        List<Book> books = new ArrayList<>(Math.min(limit, matches.cardinality()));
+        for (int ordinal = matches.nextSetBit(0); ordinal >= 0 && books.size() < limit;
+             ordinal = matches.nextSetBit(ordinal + 1)) {
+            Book book = catalogIndex.get(idsByOrdinal.get(ordinal));
+            if (book != null) {
+                books.add(book);
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("total", matches.cardinality());
+        result.put("books", books);
+        return result;
+    }
+
+    private void and(BitSet matches, Map<String, BitSet> index, List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        BitSet any = new BitSet();
+        for (String value : values) {
+            BitSet bitmap = index.get(normalize(value));
+            if (bitmap != null) {
+                any.or(bitmap);
+            }
+        }
+        matches.and(any);
+    }
+
+    private BitSet priceRange(Double min, Double max) {
+        int from = min == null ? 0 : lowerBound(min);
+        int to = max == null ? pricedCount : upperBound(max);
+        BitSet range = new BitSet();
+        for (int i = from; i < to; i++) {
+            range.set(ordinalsByPrice[i]);
+        }
+        return range;
+    }
+
+    // Goes after any equal prices, so books of one price stay in insertion order
+    private void insertPrice(int ordinal, double price) {
+        if (pricedCount == sortedPrices.length) {
+            sortedPrices = Arrays.copyOf(sortedPrices, pricedCount * 2);
+            ordinalsByPrice = Arrays.copyOf(ordinalsByPrice, pricedCount * 2);
+        }
+        int at = upperBound(price);
+        System.arraycopy(sortedPrices, at, sortedPrices, at + 1, pricedCount - at);
+        System.arraycopy(ordinalsByPrice, at, ordinalsByPrice, at + 1, pricedCount - at);
+        sortedPrices[at] = price;
+        ordinalsByPrice[at] = ordinal;
+        pricedCount++;
+    }
+
+    private void removePrice(int ordinal, double price) {
+        for (int at = lowerBound(price); at < pricedCount && sortedPrices[at] == price; at++) {
+            if (ordinalsByPrice[at] == ordinal) {
+                System.arraycopy(sortedPrices, at + 1, sortedPrices, at, pricedCount - at - 1);
+                System.arraycopy(ordinalsByPrice, at + 1, ordinalsByPrice, at, pricedCount - at - 1);
+                pricedCount--;
+                return;
+            }
+        }
+    }
+
+    // First index whose price is >= value
+    private int lowerBound(double value) {
+        int low = 0;
+        int high = pricedCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedPrices[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // First index whose price is > value
+    private int upperBound(double value) {
+        int low = 0;
+        int high = pricedCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedPrices[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void link(int ordinal, Book book) {
+        byGenre.computeIfAbsent(normalize(book.getGenre()), k -> new BitSet()).set(ordinal);
+        byCondition.computeIfAbsent(normalize(book.getCondition()), k -> new BitSet()).set(ordinal);
+        byStatus.computeIfAbsent(normalize(book.getStatus()), k -> new BitSet()).set(ordinal);
+        byOwner.computeIfAbsent(normalize(book.getUserEmail()), k -> new BitSet()).set(ordinal);
+    }
+
+    private void unlink(int ordinal, Book book) {
+        clear(byGenre, normalize(book.getGenre()), ordinal);
+        clear(byCondition, normalize(book.getCondition()), ordinal);
+        clear(byStatus, normalize(book.getStatus()), ordinal);
+        clear(byOwner, normalize(book.getUserEmail()), ordinal);
+    }
+
+    private void clear(Map<String, BitSet> index, String value, int ordinal) {
+        BitSet bitmap = index.get(value);
+        if (bitmap != null) {
+            bitmap.clear(ordinal);
+            if (bitmap.isEmpty()) {
+                index.remove(value);
+            }
+        }
+    }
+
+    private String normalize(String value) {
+        return value != null ? value.trim().toLowerCase() : "";
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU read-through cache for getBookById's keyed Firebase reads, weighted by an estimate of
+ * each book's heap size. It serves books while the resident catalog has not caught up yet (or does not
+ * hold the book); once it has, getBookById reads the catalog and the cache is left to age out.
+ * Entries are refreshed or dropped by the catalog's child listener on "books", so a cached book
+ * never outlives a change to its node. The cache keeps its own copies and hands out copies, so a
+ * caller changing a book it was given cannot change what others read.
+ */
+@Service
+public class BookCache implements BookCatalogIndex.CatalogListener {
+
+    private static final long MAX_WEIGHT_BYTES = 8L * 1024 * 1024;
+
+    private final LinkedHashMap<String, Book> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Object> pendingLoads = new ConcurrentHashMap<>();
+    private long weightBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public BookCache(BookCatalogIndex catalogIndex) {
+        catalogIndex.addListener(this);
+    }
+
+    public synchronized Book get(String bookId) {
+        Book book = entries.get(bookId);
+        if (book != null) {
+            hits.incrementAndGet();
+            return copyOf(book);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /** Marks a load as started; its result is only cached if no change to the book arrives meanwhile. */
+    public Object beginLoad(String bookId) {
+        Object token = new Object();
+        pendingLoads.put(bookId, token);
+        return token;
+    }
+
+    public synchronized void completeLoad(String bookId, Object token, Book book) {
+        if (pendingLoads.remove(bookId, token) && book != null) {
+            put(bookId, copyOf(book));
+        }
+    }
+
+    @Override
+    public synchronized void onBookUpserted(Book previous, Book current) {
+        pendingLoads.remove(current.getBookId());
+        if (entries.containsKey(current.getBookId())) {
+            put(current.getBookId(), copyOf(current)); // current is shared with the other listeners
+        }
+    }
+
+    @Override
+    public synchronized void onBookRemoved(Book previous) {
+        pendingLoads.remove(previous.getBookId());
+        Book removed = entries.remove(previous.getBookId());
+        if (removed != null) {
+            weightBytes -= estimateBytes(removed);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("entries", entries.size());
+            stats.put("weightBytes", weightBytes);
+        }
+        stats.put("maxWeightBytes", MAX_WEIGHT_BYTES);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    private void put(String bookId, Book book) {
+        Book replaced = entries.put(bookId, book);
+        if (replaced != null) {
+            weightBytes -= estimateBytes(replaced);
+        }
+        weightBytes += estimateBytes(book);
+
+        Iterator<Map.Entry<String, Book>> eldest = entries.entrySet().iterator();
+        while (weightBytes > MAX_WEIGHT_BYTES && eldest.hasNext()) {
+            Map.Entry<String, Book> entry = eldest.next();
+            weightBytes -= estimateBytes(entry.getValue());
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    // Every stored field; availableQuantity depends on live reservations and is filled in per read
+    static Book copyOf(Book book) {
+        Book copy = new Book(book.getBookId(), book.getUserId(), book.getUserEmail(), book.getName(),
+                book.getAuthor(), book.getPrice(), book.getIsbn(), book.getStatus(), book.getGenre(),
+                book.getCondition(), book.getDescription(), book.getImageUrl(), book.getQuantity());
+        copy.setCreatedAt(book.getCreatedAt());
+        copy.setUpdatedAt(book.getUpdatedAt());
+        return copy;
+    }
+
+    /*
+     * Size model shared with CompactBook.estimateBytes: the object with compressed references (12-byte
+     * header, 4-byte references, padded to 8), a boxed price when there is one, and stringBytes for
+     * every non-null string. An estimate for comparing layouts, not a measurement of the heap.
+     */
+    static long estimateBytes(Book book) {
+        long bytes = 88; // header, eleven String references, the Double and Integer references, int and two longs
+        if (book.getPrice() != null) {
+            bytes += 16;
+        }
+        return bytes + stringBytes(book.getBookId()) + stringBytes(book.getUserId())
+                + stringBytes(book.getUserEmail()) + stringBytes(book.getName()) + stringBytes(book.getAuthor())
+                + stringBytes(book.getIsbn()) + stringBytes(book.getStatus()) + stringBytes(book.getGenre())
+                + stringBytes(book.getCondition()) + stringBytes(book.getDescription())
+                + stringBytes(book.getImageUrl());
+    }
+
+    // String object plus its backing array; compact strings hold Latin-1 text at one byte per char. Null is free.
+    static long stringBytes(String value) {
+        if (value == null) {
+            return 0;
+        }
+        boolean latin1 = value.chars().allMatch(c -> c <= 0xFF);
+        return 24 + arrayBytes(latin1 ? value.length() : 2L * value.length());
+    }
+
+    static long arrayBytes(long length) {
+        return (16 + length + 7) / 8 * 8;
+    }
+}
@@ -0,0 +1,595 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Resident copy of the "books" node, partitioned by status and by owner.
+ * It is seeded from the local catalog snapshot, or by the initial onChildAdded burst when there is
+ * none, and kept current by a ChildEventListener, so role queries are lookups instead of full-tree reads.
+ * Books are held as CompactBook records and materialized on each read, so callers get their own copies;
+ * the instances passed to CatalogListeners are shared between listeners and must be treated as read-only.
+ */
+@Service
+public class BookCatalogIndex {
+
+    /** Callback for components that derive their own structures from catalog changes. */
+    public interface CatalogListener {
+        void onBookUpserted(Book previous, Book current);
+
+        void onBookRemoved(Book previous);
+    }
+
+    // Snapshots older than this are not trusted, since deletion tombstones are pruned after it
+    static final Duration TOMBSTONE_RETENTION = Duration.ofDays(7);
+    // Allowance for clock differences between the instances stamping updatedAt
+    private static final long CATCH_UP_MARGIN_MILLIS = Duration.ofMinutes(5).toMillis();
+
+    private final FirebaseApp firebaseApp;
+    private final CatalogSnapshotStore snapshotStore;
+    private final long snapshotIntervalMinutes;
+    private DatabaseReference databaseReference;
+    private DatabaseReference tombstonesReference;
+    private ChildEventListener childEventListener;
+    private ScheduledExecutorService snapshotScheduler;
+
+    private final Map<String, CompactBook> booksById = new ConcurrentHashMap<>();
+    private final CompactBook.Encoder encoder = new CompactBook.Encoder();
+    private final Map<String, NavigableSet<String>> idsByStatus = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<String>> idsByOwner = new ConcurrentHashMap<>();
+    private final List<CatalogListener> listeners = new CopyOnWriteArrayList<>();
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    // Completes once the state since the snapshot has been applied; until then a save would lose it
+    private final CompletableFuture<Void> caughtUp = new CompletableFuture<>();
+    private volatile ToIntFunction<String> reservedQuantity = bookId -> 0;
+
+    public BookCatalogIndex(FirebaseApp firebaseApp, CatalogSnapshotStore snapshotStore,
+                            @Value("${books.snapshot.interval-minutes:10}") long snapshotIntervalMinutes) {
+        this.firebaseApp = firebaseApp;
+        this.snapshotStore = snapshotStore;
+        this.snapshotIntervalMinutes = snapshotIntervalMinutes;
+    }
+
+    /**
+     * Seeds from the local snapshot when there is a usable one and becomes ready at once, then reads
+     * once the books stamped (updatedAt) or tombstoned since the snapshot and is caught up. Live changes
+     * come from a listener on the whole "books" node either way, so writers that do not stamp updatedAt
+     * are still seen. Without a snapshot the whole node is loaded as before.
+     */
+    @PostConstruct
+    private void init() {
+        DatabaseReference root = FirebaseDatabase.getInstance(firebaseApp).getReference();
+        this.databaseReference = root.child("books");
+        this.tombstonesReference = root.child("bookTombstones");
+
+        CatalogSnapshotStore.Snapshot snapshot = snapshotStore.load();
+        if (snapshot != null
+                && System.currentTimeMillis() - snapshot.getCapturedAt() < TOMBSTONE_RETENTION.toMillis()) {
+            for (Book book : snapshot.getBooks()) {
+                upsert(book.getBookId(), book);
+            }
+            ready.complete(null);
+            catchUpSince(snapshot.getCapturedAt() - CATCH_UP_MARGIN_MILLIS)
+                    .whenComplete((unused, error) -> {
+                        if (error != null) {
+                            System.err.println("Catalog catch-up failed, waiting for the full load: "
+                                    + error.getMessage());
+                        } else {
+                            caughtUp.complete(null);
+                        }
+                        listen();
+                    });
+        } else {
+            listen();
+        }
+
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "catalog-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(this::saveSnapshot, snapshotIntervalMinutes,
+                snapshotIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    // Live listener on "books"; its initial burst also completes seeding, from scratch or on top of a snapshot
+    private void listen() {
+        childEventListener = databaseReference.addChildEventListener(new ChildEventListener() {
+            @Override
+            public void onChildAdded(DataSnapshot snapshot, String previousChildName) {
+                upsert(snapshot);
+            }
+
+            @Override
+            public void onChildChanged(DataSnapshot snapshot, String previousChildName) {
+                upsert(snapshot);
+            }
+
+            @Override
+            public void onChildRemoved(DataSnapshot snapshot) {
+                remove(snapshot.getKey());
+            }
+
+            @Override
+            public void onChildMoved(DataSnapshot snapshot, String previousChildName) {
+                // Ordering is kept by the index itself
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                ready.completeExceptionally(error.toException());
+                caughtUp.completeExceptionally(error.toException());
+            }
+        });
+
+        // Value events fire after the child events for the same data, so this marks the end of seeding;
+        // books seeded from the snapshot that are no longer there were deleted meanwhile
+        databaseReference.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                for (String bookId : new ArrayList<>(booksById.keySet())) {
+                    if (!snapshot.hasChild(bookId)) {
+                        remove(bookId);
+                    }
+                }
+                ready.complete(null);
+                caughtUp.complete(null);
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                ready.completeExceptionally(error.toException());
+                caughtUp.completeExceptionally(error.toException());
+            }
+        });
+    }
+
+    /**
+     * One read of the books stamped since the snapshot and one of the tombstones written since, with
+     * every tombstone checked against the book node. Needs ".indexOn": ["updatedAt"] on books and
+     * ".indexOn": ".value" on bookTombstones.
+     */
+    private CompletableFuture<Void> catchUpSince(long since) {
+        CompletableFuture<Void> changes = readOnce(databaseReference.orderByChild("updatedAt").startAt(since))
+                .thenAccept(snapshot -> {
+                    for (DataSnapshot child : snapshot.getChildren()) {
+                        upsert(child);
+                    }
+                });
+        CompletableFuture<Void> removals = readOnce(tombstonesReference.orderByValue().startAt(since))
+                .thenCompose(snapshot -> {
+                    List<CompletableFuture<Void>> checks = new ArrayList<>();
+                    for (DataSnapshot tombstone : snapshot.getChildren()) {
+                        checks.add(verifyRemoved(tombstone.getKey()));
+                    }
+                    return CompletableFuture.allOf(checks.toArray(new CompletableFuture[0]));
+                });
+        return CompletableFuture.allOf(changes, removals);
+    }
+
+    private CompletableFuture<DataSnapshot> readOnce(Query query) {
+        CompletableFuture<DataSnapshot> future = new CompletableFuture<>();
+        query.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                future.complete(snapshot);
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                future.completeExceptionally(error.toException());
+            }
+        });
+        return future;
+    }
+
+    private CompletableFuture<Void> verifyRemoved(String bookId) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        databaseReference.child(bookId).addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                if (snapshot.exists()) {
+                    upsert(snapshot);
+                } else {
+                    remove(bookId);
+                }
+                future.complete(null);
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                System.err.println("Catalog removal check failed: " + error.getMessage());
+                future.completeExceptionally(error.toException());
+            }
+        });
+        return future;
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        if (childEventListener != null) {
+            databaseReference.removeEventListener(childEventListener);
+        }
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        saveSnapshot();
+    }
+
+    /*
+     * Books stamped after capturedAt are caught up on the next start, so a racing change is never lost.
+     * Nothing is saved before catch-up has finished: a snapshot stamped now but missing the changes since
+     * the previous capture would make the next start skip them for good.
+     */
+    private void saveSnapshot() {
+        if (!caughtUp.isDone() || caughtUp.isCompletedExceptionally()) {
+            return;
+        }
+        long capturedAt = System.currentTimeMillis();
+        try {
+            snapshotStore.save(capturedAt, all());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Catalog snapshot write failed: " + e.getMessage());
+            return;
+        }
+        pruneTombstones(capturedAt - TOMBSTONE_RETENTION.toMillis());
+    }
+
+    private void pruneTombstones(long before) {
+        tombstonesReference.orderByValue().endAt(before).addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                Map<String, Object> updates = new HashMap<>();
+                for (DataSnapshot tombstone : snapshot.getChildren()) {
+                    updates.put(tombstone.getKey(), null);
+                }
+                if (!updates.isEmpty()) {
+                    tombstonesReference.updateChildrenAsync(updates);
+                }
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                System.err.println("Tombstone pruning failed: " + error.getMessage());
+            }
+        });
+    }
+
+    public CompletableFuture<Void> whenReady() {
+        return ready;
+    }
+
+    /**
+     * Completes once the index reflects Firebase, not just the disk snapshot it may have been seeded
+     * from. Decisions that would act on a book being absent (listing key takeovers, status updates,
+     * reservations) wait for this rather than whenReady.
+     */
+    public CompletableFuture<Void> whenCaughtUp() {
+        return caughtUp;
+    }
+
+    /** Registers a listener and replays the books already indexed so it starts from the same state. */
+    public synchronized void addListener(CatalogListener listener) {
+        listeners.add(listener);
+        for (CompactBook book : booksById.values()) {
+            listener.onBookUpserted(null, book.toBook());
+        }
+    }
+
+    /** Source of the copies held by cart reservations, used to fill in availableQuantity on every read. */
+    void setReservationLookup(ToIntFunction<String> reservedQuantity) {
+        this.reservedQuantity = reservedQuantity;
+    }
+
+    public Book get(String bookId) {
+        CompactBook book = bookId == null ? null : booksById.get(bookId);
+        return book != null ? materialize(book) : null;
+    }
+
+    public boolean contains(String bookId) {
+        return bookId != null && booksById.containsKey(bookId);
+    }
+
+    public Collection<Book> all() {
+        List<Book> books = new ArrayList<>(booksById.size());
+        for (CompactBook book : booksById.values()) {
+            books.add(materialize(book));
+        }
+        return books;
+    }
+
+    /**
+     * Estimated heap of the resident catalog in compact form against the same books held as Book
+     * objects, both under BookCache's size model, to keep an eye on what the compact format saves.
+     * These are model estimates, not heap measurements; measureFootprint measures a sample.
+     */
+    public Map<String, Object> getFootprint() {
+        long compactBytes = encoder.estimateBytes();
+        long bookBytes = 0;
+        int books = 0;
+        for (CompactBook book : booksById.values()) {
+            compactBytes += book.estimateBytes();
+            bookBytes += BookCache.estimateBytes(book.toBook());
+            books++;
+        }
+        Map<String, Object> footprint = new LinkedHashMap<>();
+        footprint.put("books", books);
+        footprint.put("compactBytes", compactBytes);
+        footprint.put("bookObjectBytes", bookBytes);
+        footprint.put("ratio", bookBytes > 0 ? (double) compactBytes / bookBytes : 0.0);
+        return footprint;
+    }
+
+    /**
+     * Heap measured, rather than modelled, for up to sampleSize resident books built once as Book objects
+     * and once as CompactBooks under a fresh encoder: used heap after a full GC, read from the
+     * MemoryMXBean, before and after each build. Strings are copied so nothing is shared with the live
+     * catalog. Each reading forces a full collection and is subject to allocation by other threads, so
+     * it is meant for occasional checks on a quiet instance, repeated once since the first run also pays
+     * for class loading. G1 and Parallel give steady figures; the
+     * Serial collector leaves some dead objects uncompacted (MarkSweepDeadRatio) and can be off by
+     * that much.
+     */
+    public Map<String, Object> measureFootprint(int sampleSize) {
+        List<Book> sample = new ArrayList<>();
+        for (CompactBook book : booksById.values()) {
+            if (sample.size() >= sampleSize) {
+                break;
+            }
+            sample.add(book.toBook());
+        }
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        long before = usedHeapAfterGc(memory);
+        List<Book> asBooks = new ArrayList<>(sample.size());
+        for (Book book : sample) {
+            asBooks.add(detached(book));
+        }
+        long bookBytes = usedHeapAfterGc(memory) - before;
+
+        before = usedHeapAfterGc(memory);
+        CompactBook.Encoder sampleEncoder = new CompactBook.Encoder();
+        List<CompactBook> asCompact = new ArrayList<>(sample.size());
+        for (Book book : sample) {
+            asCompact.add(sampleEncoder.encode(detached(book)));
+        }
+        long compactBytes = usedHeapAfterGc(memory) - before;
+        Reference.reachabilityFence(asBooks);
+        Reference.reachabilityFence(asCompact);
+
+        Map<String, Object> footprint = new LinkedHashMap<>();
+        footprint.put("books", sample.size());
+        footprint.put("compactBytes", compactBytes);
+        footprint.put("bookObjectBytes", bookBytes);
+        footprint.put("ratio", bookBytes > 0 ? (double) compactBytes / bookBytes : 0.0);
+        return footprint;
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) {
+        memory.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    // A copy sharing no string or boxed value with the original
+    private static Book detached(Book book) {
+        Book copy = new Book(copyOf(book.getBookId()), copyOf(book.getUserId()), copyOf(book.getUserEmail()),
+                copyOf(book.getName()), copyOf(book.getAuthor()),
+                book.getPrice() != null ? Double.valueOf(book.getPrice().doubleValue()) : null,
+                copyOf(book.getIsbn()), copyOf(book.getStatus()), copyOf(book.getGenre()),
+                copyOf(book.getCondition()), copyOf(book.getDescription()), copyOf(book.getImageUrl()),
+                book.getQuantity());
+        copy.setCreatedAt(book.getCreatedAt());
+        copy.setUpdatedAt(book.getUpdatedAt());
+        return copy;
+    }
+
+    private static String copyOf(String value) {
+        return value != null ? new String(value.toCharArray()) : null;
+    }
+
+    public int size() {
+        return booksById.size();
+    }
+
+    public List<Book> booksWithStatus(String... statuses) {
+        NavigableSet<String> ids = new TreeSet<>();
+        for (String status : statuses) {
+            ids.addAll(idsByStatus.getOrDefault(normalize(status), Collections.emptyNavigableSet()));
+        }
+        return resolve(ids);
+    }
+
+    public List<Book> booksOwnedBy(String userEmail) {
+        return resolve(idsByOwner.getOrDefault(ownerKey(userEmail), Collections.emptyNavigableSet()));
+    }
+
+    public List<Book> booksForRole(String role, String userEmail) {
+        List<NavigableSet<String>> partitions = partitionsForRole(role, userEmail);
+        if (partitions.size() == 1) {
+            return resolve(partitions.get(0));
+        }
+        NavigableSet<String> ids = new TreeSet<>();
+        for (NavigableSet<String> partition : partitions) {
+            ids.addAll(partition);
+        }
+        return resolve(ids);
+    }
+
+    /**
+     * One page of a role listing in bookId order, starting after the given id (null for the first page).
+     * Only the head of each partition's tail set is visited.
+     */
+    public List<Book> pageForRole(String role, String userEmail, String afterBookId, int limit) {
+        NavigableSet<String> ids = new TreeSet<>();
+        for (NavigableSet<String> partition : partitionsForRole(role, userEmail)) {
+            Iterator<String> tail = afterBookId == null
+                    ? partition.iterator()
+                    : partition.tailSet(afterBookId, false).iterator();
+            for (int taken = 0; taken < limit && tail.hasNext(); taken++) {
+                ids.add(tail.next());
+            }
+        }
+        List<String> page = new ArrayList<>(limit);
+        for (String id : ids) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(id);
+        }
+        return resolve(page);
+    }
+
+    private List<NavigableSet<String>> partitionsForRole(String role, String userEmail) {
+        List<NavigableSet<String>> partitions = new ArrayList<>();
+        if (isOwnerRole(role)) {
+            partitions.add(idsByOwner.getOrDefault(ownerKey(userEmail), Collections.emptyNavigableSet()));
+        }
+        for (String status : statusesForRole(role)) {
+            partitions.add(statusPartition(status));
+        }
+        return partitions;
+    }
+
+    /** Seller and lender views list the user's own books rather than a status. */
+    static boolean isOwnerRole(String role) {
+        String normalized = role.toLowerCase();
+        return "seller".equals(normalized) || "lender".equals(normalized);
+    }
+
+    /** Statuses a role browses; empty for owner roles and unknown roles. */
+    static List<String> statusesForRole(String role) {
+        switch (role.toLowerCase()) {
+            case "buyer":
+                return List.of("available", "donatable");
+            case "borrower":
+                return List.of("lending");
+            case "donator":
+                return List.of("donating");
+            case "exchanger":
+                return List.of("exchangeable");
+            default:
+                return List.of();
+        }
+    }
+
+    private NavigableSet<String> statusPartition(String status) {
+        return idsByStatus.getOrDefault(normalize(status), Collections.emptyNavigableSet());
+    }
+
+    private List<Book> resolve(Collection<String> ids) {
+        List<Book> books = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            CompactBook book = booksById.get(id);
+            if (book != null) {
+                books.add(materialize(book));
+            }
+        }
+        return books;
+    }
+
+    // Reservations change without a catalog event, so available-to-promise is computed at read time
+    private Book materialize(CompactBook compact) {
+        return withAvailability(compact.toBook());
+    }
+
+    /** Fills in availableQuantity (quantity less live cart reservations) on a book read elsewhere. */
+    Book withAvailability(Book book) {
+        book.setAvailableQuantity(Math.max(0, book.getQuantity() - reservedQuantity.applyAsInt(book.getBookId())));
+        return book;
+    }
+
+    private void upsert(DataSnapshot snapshot) {
+        Book book = snapshot.getValue(Book.class);
+        if (book == null) {
+            remove(snapshot.getKey());
+            return;
+        }
+        upsert(snapshot.getKey(), book);
+    }
+
+    private synchronized void upsert(String bookId, Book book) {
+        if (book.getBookId() == null) {
+            book.setBookId(bookId);
+        }
+
+        CompactBook compact = encoder.encode(book);
+        CompactBook replaced = booksById.put(bookId, compact);
+        if (replaced != null) {
+            unlink(bookId, replaced);
+        }
+        link(bookId, compact);
+
+        Book previous = replaced != null ? replaced.toBook() : null;
+        for (CatalogListener listener : listeners) {
+            listener.onBookUpserted(previous, book);
+        }
+    }
+
+    private synchronized void remove(String bookId) {
+        CompactBook removed = booksById.remove(bookId);
+        if (removed == null) {
+            return;
+        }
+        unlink(bookId, removed);
+
+        Book previous = removed.toBook();
+        for (CatalogListener listener : listeners) {
+            listener.onBookRemoved(previous);
+        }
+    }
+
+    private void link(String bookId, CompactBook book) {
+        idsByStatus.computeIfAbsent(normalize(book.getStatus()), k -> new ConcurrentSkipListSet<>()).add(bookId);
+        idsByOwner.computeIfAbsent(ownerKey(book.getUserEmail()), k -> new ConcurrentSkipListSet<>()).add(bookId);
+    }
+
+    private void unlink(String bookId, CompactBook book) {
+        Set<String> byStatus = idsByStatus.get(normalize(book.getStatus()));
+        if (byStatus != null) {
+            byStatus.remove(bookId);
+        }
+        Set<String> byOwner = idsByOwner.get(ownerKey(book.getUserEmail()));
+        if (byOwner != null) {
+            byOwner.remove(bookId);
+        }
+    }
+
+    static String normalize(String value) {
+        return value != null ? value.toLowerCase() : "";
+    }
+
+    static String ownerKey(String email) {
+        return sanitizeEmail(email).toLowerCase();
+    }
+
+    private static String sanitizeEmail(String email) {
+        if (email == null) {
+            return "";
+        }
+        return email.replace(".", ",")
+                .replace("#", ",")
+                .replace("$", ",")
+                .replace("[", ",")
+                .replace("]", ",");
+    }
+}
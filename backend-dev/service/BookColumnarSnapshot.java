@@ -0,0 +1,237 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * Struct-of-arrays copy of the catalog for analytics: one primitive column per attribute, indexed by a
+ * dense row ordinal (reused after removal), with status, genre, condition and owner as dictionary codes.
+ * Rows are patched in place on every catalog change, and aggregations are loops over the columns that
+ * split into parallel chunks on large catalogs without allocating anything per row.
+ */
+@Service
+public class BookColumnarSnapshot implements BookCatalogIndex.CatalogListener {
+
+    private static final int CHUNK_ROWS = 16_384;
+    private static final int PARALLEL_THRESHOLD_ROWS = 4 * CHUNK_ROWS;
+    private static final int LOW_STOCK_QUANTITY = 1;
+    private static final List<String> GROUPINGS = List.of("genre", "condition", "status");
+
+    private final CompactBook.Dictionary statuses = new CompactBook.Dictionary();
+    private final CompactBook.Dictionary genres = new CompactBook.Dictionary();
+    private final CompactBook.Dictionary conditions = new CompactBook.Dictionary();
+    private final CompactBook.Dictionary owners = new CompactBook.Dictionary();
+
+    private final Map<String, Integer> rows = new HashMap<>();
+    private final Deque<Integer> freeRows = new ArrayDeque<>();
+    private int rowCount;
+
+    // Columns, one slot per row ordinal
+    private boolean[] live = new boolean[1024];
+    private double[] price = new double[1024]; // NaN where the book has no price
+    private int[] quantity = new int[1024];
+    private int[] status = new int[1024];
+    private int[] genre = new int[1024];
+    private int[] condition = new int[1024];
+    private int[] owner = new int[1024];
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public BookColumnarSnapshot(BookCatalogIndex catalogIndex) {
+        catalogIndex.addListener(this);
+    }
+
+    @Override
+    public void onBookUpserted(Book previous, Book current) {
+        lock.writeLock().lock();
+        try {
+            Integer row = rows.get(current.getBookId());
+            if (row == null) {
+                row = freeRows.isEmpty() ? rowCount++ : freeRows.pop();
+                ensureCapacity(rowCount);
+                rows.put(current.getBookId(), row);
+            }
+            live[row] = true;
+            price[row] = current.getPrice() != null ? current.getPrice() : Double.NaN;
+            quantity[row] = current.getQuantity();
+            status[row] = statuses.encode(normalize(current.getStatus()));
+            genre[row] = genres.encode(normalize(current.getGenre()));
+            condition[row] = conditions.encode(normalize(current.getCondition()));
+            owner[row] = owners.encode(BookCatalogIndex.ownerKey(current.getUserEmail()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onBookRemoved(Book previous) {
+        lock.writeLock().lock();
+        try {
+            Integer row = rows.remove(previous.getBookId());
+            if (row != null) {
+                live[row] = false;
+                freeRows.push(row);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Listings, copies, average price and low-stock listings per genre, condition or status, optionally
+     * restricted to one owner's books and to the given statuses. Unpriced books are left out of the average.
+     */
+    public Map<String, Map<String, Object>> aggregate(String groupBy, String ownerEmail, Collection<String> statusFilter) {
+        String grouping = normalize(groupBy);
+        if (!GROUPINGS.contains(grouping)) {
+            throw new IllegalArgumentException("groupBy must be one of " + GROUPINGS);
+        }
+
+        lock.readLock().lock();
+        try {
+            CompactBook.Dictionary dictionary = dictionaryFor(grouping);
+            int[] groupColumn = columnFor(grouping);
+            int groups = dictionary.size();
+
+            int ownerCode = CompactBook.NONE;
+            if (ownerEmail != null && !ownerEmail.isBlank()) {
+                ownerCode = owners.lookup(BookCatalogIndex.ownerKey(ownerEmail));
+                if (ownerCode == CompactBook.NONE) {
+                    return new TreeMap<>();
+                }
+            }
+            boolean[] statusAllowed = null;
+            if (statusFilter != null && !statusFilter.isEmpty()) {
+                statusAllowed = new boolean[statuses.size()];
+                for (String value : statusFilter) {
+                    int code = statuses.lookup(normalize(value));
+                    if (code != CompactBook.NONE) {
+                        statusAllowed[code] = true;
+                    }
+                }
+            }
+
+            int chunks = (rowCount + CHUNK_ROWS - 1) / CHUNK_ROWS;
+            int requiredOwner = ownerCode;
+            boolean[] allowed = statusAllowed;
+            IntStream chunkStream = IntStream.range(0, chunks);
+            if (rowCount >= PARALLEL_THRESHOLD_ROWS) {
+                chunkStream = chunkStream.parallel();
+            }
+            Totals totals = chunkStream.collect(() -> new Totals(groups),
+                    (partial, chunk) -> scan(partial, chunk * CHUNK_ROWS,
+                            Math.min(rowCount, (chunk + 1) * CHUNK_ROWS), groupColumn, requiredOwner, allowed),
+                    Totals::merge);
+
+            Map<String, Map<String, Object>> result = new TreeMap<>();
+            for (int group = 0; group < groups; group++) {
+                if (totals.listings[group] == 0) {
+                    continue;
+                }
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("listings", totals.listings[group]);
+                row.put("copies", totals.copies[group]);
+                row.put("averagePrice", totals.priced[group] > 0 ? totals.priceSum[group] / totals.priced[group] : null);
+                row.put("lowStock", totals.lowStock[group]);
+                result.put(dictionary.decode(group), row);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Per-group running sums over one range of rows. */
+    private static final class Totals {
+        final long[] listings;
+        final long[] copies;
+        final long[] priced;
+        final double[] priceSum;
+        final long[] lowStock;
+
+        Totals(int groups) {
+            listings = new long[groups];
+            copies = new long[groups];
+            priced = new long[groups];
+            priceSum = new double[groups];
+            lowStock = new long[groups];
+        }
+
+        Totals merge(Totals other) {
+            for (int group = 0; group < listings.length; group++) {
+                listings[group] += other.listings[group];
+                copies[group] += other.copies[group];
+                priced[group] += other.priced[group];
+                priceSum[group] += other.priceSum[group];
+                lowStock[group] += other.lowStock[group];
+            }
+            return this;
+        }
+    }
+
+    // Adds the matching rows in [from, to) to the totals of the calling thread
+    private void scan(Totals totals, int from, int to, int[] groupColumn, int requiredOwner, boolean[] statusAllowed) {
+        for (int row = from; row < to; row++) {
+            if (!live[row]
+                    || (requiredOwner != CompactBook.NONE && owner[row] != requiredOwner)
+                    || (statusAllowed != null && !statusAllowed[status[row]])) {
+                continue;
+            }
+            int group = groupColumn[row];
+            totals.listings[group]++;
+            totals.copies[group] += quantity[row];
+            if (!Double.isNaN(price[row])) {
+                totals.priced[group]++;
+                totals.priceSum[group] += price[row];
+            }
+            if (quantity[row] <= LOW_STOCK_QUANTITY) {
+                totals.lowStock[group]++;
+            }
+        }
+    }
+
+    private CompactBook.Dictionary dictionaryFor(String grouping) {
+        switch (grouping) {
+            case "genre":
+                return genres;
+            case "condition":
+                return conditions;
+            default:
+                return statuses;
+        }
+    }
+
+    private int[] columnFor(String grouping) {
+        switch (grouping) {
+            case "genre":
+                return genre;
+            case "condition":
+                return condition;
+            default:
+                return status;
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= live.length) {
+            return;
+        }
+        int capacity = Math.max(size, live.length * 2);
+        live = Arrays.copyOf(live, capacity);
+        price = Arrays.copyOf(price, capacity);
+        quantity = Arrays.copyOf(quantity, capacity);
+        status = Arrays.copyOf(status, capacity);
+        genre = Arrays.copyOf(genre, capacity);
+        condition = Arrays.copyOf(condition, capacity);
+        owner = Arrays.copyOf(owner, capacity);
+    }
+
+    private static String normalize(String value) {
+        return value != null ? value.trim().toLowerCase() : "";
+    }
+}
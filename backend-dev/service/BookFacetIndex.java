@@ -0,0 +1,96 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Listing and copy counts per (status, genre), (status, condition) and (status, price band),
+ * adjusted on every catalog change so dashboards never need a catalog scan.
+ */
+@Service
+public class BookFacetIndex implements BookCatalogIndex.CatalogListener {
+
+    private static final double[] PRICE_BOUNDS = {0, 100, 250, 500, 1000};
+    private static final String[] PRICE_LABELS = {"free", "1-100", "101-250", "251-500", "501-1000", "1000+"};
+
+    // facet -> status -> value -> {listings, copies}
+    private final Map<String, Map<String, Map<String, long[]>>> counts = new ConcurrentHashMap<>();
+
+    public BookFacetIndex(BookCatalogIndex catalogIndex) {
+        catalogIndex.addListener(this);
+    }
+
+    @Override
+    public synchronized void onBookUpserted(Book previous, Book current) {
+        if (previous != null) {
+            apply(previous, -1);
+        }
+        apply(current, 1);
+    }
+
+    @Override
+    public synchronized void onBookRemoved(Book previous) {
+        apply(previous, -1);
+    }
+
+    /**
+     * Counts for the given statuses summed together (all statuses when none are given),
+     * as facet -> value -> {"listings", "copies"}.
+     */
+    public synchronized Map<String, Map<String, Map<String, Long>>> getFacets(Collection<String> statuses) {
+        Map<String, Map<String, Map<String, Long>>> facets = new LinkedHashMap<>();
+        for (String facet : List.of("genre", "condition", "price")) {
+            Map<String, Map<String, Long>> values = new TreeMap<>();
+            for (Map.Entry<String, Map<String, long[]>> byStatus
+                    : counts.getOrDefault(facet, Collections.emptyMap()).entrySet()) {
+                if (statuses != null && !statuses.isEmpty() && !statuses.contains(byStatus.getKey())) {
+                    continue;
+                }
+                for (Map.Entry<String, long[]> value : byStatus.getValue().entrySet()) {
+                    Map<String, Long> total = values.computeIfAbsent(value.getKey(), k -> new LinkedHashMap<>());
+                    total.merge("listings", value.getValue()[0], Long::sum);
+                    total.merge("copies", value.getValue()[1], Long::sum);
+                }
+            }
+            facets.put(facet, values);
+        }
+        return facets;
+    }
+
+    private void apply(Book book, int sign) {
+        String status = normalize(book.getStatus());
+        adjust("genre", status, normalize(book.getGenre()), sign, book.getQuantity());
+        adjust("condition", status, normalize(book.getCondition()), sign, book.getQuantity());
+        adjust("price", status, priceBand(book.getPrice()), sign, book.getQuantity());
+    }
+
+    private void adjust(String facet, String status, String value, int sign, int quantity) {
+        Map<String, long[]> values = counts.computeIfAbsent(facet, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(status, k -> new ConcurrentHashMap<>());
+        long[] count = values.computeIfAbsent(value, k -> new long[2]);
+        count[0] += sign;
+        count[1] += (long) sign * quantity;
+        if (count[0] <= 0) {
+            values.remove(value);
+        }
+    }
+
+    static String priceBand(Double price) {
+        if (price == null || price <= PRICE_BOUNDS[0]) {
+            return PRICE_LABELS[0];
+        }
+        for (int i = 1; i < PRICE_BOUNDS.length; i++) {
+            if (price <= PRICE_BOUNDS[i]) {
+                return PRICE_LABELS[i];
+            }
+        }
+        return PRICE_LABELS[PRICE_LABELS.length - 1];
+    }
+
+    private String normalize(String value) {
+        return value != null && !value.isBlank() ? value.trim().toLowerCase() : "unknown";
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Typo-tolerant lookup over the words of book names and authors. Each query word is matched
+ * against the vocabulary through an n-gram index (trigrams, or bigrams for short words, which
+ * share too few trigrams once misspelt); only the best few candidates get an edit-distance check,
+ * so a fuzzy query costs about the same as an exact one.
+ */
+@Service
+public class BookFuzzyIndex implements BookCatalogIndex.CatalogListener {
+
+    private static final int MAX_CANDIDATES = 50;
+    private static final int SHORT_WORD_LENGTH = 5;
+
+    // term -> books containing it in name or author
+    private final Map<String, Set<String>> booksByTerm = new HashMap<>();
+    private final Map<String, Set<String>> termsByGram = new HashMap<>();
+    private final Map<String, Set<String>> termsByBook = new HashMap<>();
+    private final BookCatalogIndex catalogIndex;
+
+    public BookFuzzyIndex(BookCatalogIndex catalogIndex) {
+        this.catalogIndex = catalogIndex;
+        catalogIndex.addListener(this);
+    }
+
+    @Override
+    public synchronized void onBookUpserted(Book previous, Book current) {
+        unindex(current.getBookId());
+        Set<String> terms = new HashSet<>(BookSearchIndex.tokenize(current.getName()));
+        terms.addAll(BookSearchIndex.tokenize(current.getAuthor()));
+        for (String term : terms) {
+            Set<String> books = booksByTerm.computeIfAbsent(term, k -> new HashSet<>());
+            if (books.isEmpty()) {
+                for (String gram : indexGrams(term)) {
+                    termsByGram.computeIfAbsent(gram, k -> new HashSet<>()).add(term);
+                }
+            }
+            books.add(current.getBookId());
+        }
+        termsByBook.put(current.getBookId(), terms);
+    }
+
+    @Override
+    public synchronized void onBookRemoved(Book previous) {
+        unindex(previous.getBookId());
+    }
+
+    /**
+     * Books where every query word is within the allowed edit distance of some name or author word,
+     * closest first (summed distance), then by bookId.
+     */
+    public synchronized List<Book> search(String query) {
+        List<String> words = BookSearchIndex.tokenize(query);
+        if (words.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<String, Integer> distances = null;
+        for (String word : words) {
+            Map<String, Integer> wordDistances = new HashMap<>();
+            for (Map.Entry<String, Integer> match : closeTerms(word).entrySet()) {
+                for (String bookId : booksByTerm.get(match.getKey())) {
+                    wordDistances.merge(bookId, match.getValue(), Math::min);
+                }
+            }
+            if (distances == null) {
+                distances = wordDistances;
+            } else {
+                distances.keySet().retainAll(wordDistances.keySet());
+                for (Map.Entry<String, Integer> entry : distances.entrySet()) {
+                    entry.setValue(entry.getValue() + wordDistances.get(entry.getKey()));
+                }
+            }
+            if (distances.isEmpty()) {
+                return new ArrayList<>();
+            }
+        }
+
+        List<Map.Entry<String, Integer>> ranked = new ArrayList<>(distances.entrySet());
+        ranked.sort(Map.Entry.<String, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+        List<Book> books = new ArrayList<>(ranked.size());
+        for (Map.Entry<String, Integer> entry : ranked) {
+            Book book = catalogIndex.get(entry.getKey());
+            if (book != null) {
+                books.add(book);
+            }
+        }
+        return books;
+    }
+
+    // Vocabulary terms within the allowed distance of the word, taken from its best n-gram candidates
+    private Map<String, Integer> closeTerms(String word) {
+        Map<String, Integer> shared = new HashMap<>();
+        for (String gram : grams(word, word.length() <= SHORT_WORD_LENGTH ? 2 : 3)) {
+            for (String term : termsByGram.getOrDefault(gram, Collections.emptySet())) {
+                shared.merge(term, 1, Integer::sum);
+            }
+        }
+
+        PriorityQueue<Map.Entry<String, Integer>> best = new PriorityQueue<>(
+                Map.Entry.<String, Integer>comparingByValue()
+                        .thenComparing(Map.Entry::getKey, Comparator.reverseOrder()));
+        for (Map.Entry<String, Integer> entry : shared.entrySet()) {
+            best.add(entry);
+            if (best.size() > MAX_CANDIDATES) {
+                best.poll();
+            }
+        }
+
+        int maxDistance = word.length() <= 4 ? 1 : 2;
+        Map<String, Integer> matches = new HashMap<>();
+        for (Map.Entry<String, Integer> candidate : best) {
+            int distance = editDistance(word, candidate.getKey(), maxDistance);
+            if (distance <= maxDistance) {
+                matches.put(candidate.getKey(), distance);
+            }
+        }
+        return matches;
+    }
+
+    private void unindex(String bookId) {
+        Set<String> terms = termsByBook.remove(bookId);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            Set<String> books = booksByTerm.get(term);
+            if (books == null) {
+                continue;
+            }
+            books.remove(bookId);
+            if (books.isEmpty()) {
+                booksByTerm.remove(term);
+                for (String gram : indexGrams(term)) {
+                    Set<String> gramTerms = termsByGram.get(gram);
+                    if (gramTerms != null) {
+                        gramTerms.remove(term);
+                        if (gramTerms.isEmpty()) {
+                            termsByGram.remove(gram);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Bigrams are indexed for every term that a short query word could be a misspelling of
+    private Set<String> indexGrams(String term) {
+        Set<String> grams = grams(term, 3);
+        if (term.length() <= SHORT_WORD_LENGTH + 2) {
+            grams.addAll(grams(term, 2));
+        }
+        return grams;
+    }
+
+    static Set<String> grams(String term, int n) {
+        String padded = "^" + term + "$";
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + n <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + n));
+        }
+        return grams;
+    }
+
+    // Levenshtein distance with adjacent transpositions, giving up once it exceeds maxDistance
+    static int editDistance(String a, String b, int maxDistance) {
+        if (Math.abs(a.length() - b.length()) > maxDistance) {
+            return maxDistance + 1;
+        }
+        int[] previous2 = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    current[j] = Math.min(current[j], previous2[j - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxDistance) {
+                return maxDistance + 1;
+            }
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[b.length()];
+    }
+}
@@ -0,0 +1,378 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.model.BookImportResult;
+import com.example.demo.model.BookImportRowResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.*;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Streams CSV or JSON-lines book records into the catalog in batches. Every batch is one
+ * multi-path commit, and wishlist subscribers are looked up once per batch rather than per book.
+ * CSV input needs a header row naming Book fields; quoted values may not span lines.
+ */
+@Service
+public class BookImportService {
+
+    private static final int BATCH_SIZE = 200;
+
+    private final FirebaseApp firebaseApp;
+    private final BookCatalogIndex catalogIndex;
+    private final WishlistService wishlistService;
+    private final NotificationService notificationService;
+    private final BookService bookService;
+    private final SavedSearchService savedSearchService;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService importExecutor = Executors.newFixedThreadPool(2);
+    private DatabaseReference rootReference;
+
+    public BookImportService(FirebaseApp firebaseApp, BookCatalogIndex catalogIndex, WishlistService wishlistService,
+                             NotificationService notificationService, BookService bookService,
+                             SavedSearchService savedSearchService, Validator validator, ObjectMapper objectMapper) {
+        this.firebaseApp = firebaseApp;
+        this.catalogIndex = catalogIndex;
+        this.wishlistService = wishlistService;
+        this.notificationService = notificationService;
+        this.bookService = bookService;
+        this.savedSearchService = savedSearchService;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    private void init() {
+        this.rootReference = FirebaseDatabase.getInstance(firebaseApp).getReference();
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        importExecutor.shutdown();
+    }
+
+    public CompletableFuture<BookImportResult> importBooks(InputStream input, boolean jsonLines, boolean isSeller) {
+        return catalogIndex.whenReady().thenApplyAsync(unused -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+                return runImport(reader, jsonLines, isSeller);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, importExecutor);
+    }
+
+    private BookImportResult runImport(BufferedReader reader, boolean jsonLines, boolean isSeller) throws IOException {
+        long start = System.nanoTime();
+        ImportState state = new ImportState();
+        BookImportResult result = new BookImportResult();
+
+        List<String> header = null;
+        List<ParsedRow> batch = new ArrayList<>();
+        int rowNumber = 0;
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            if (!jsonLines && header == null) {
+                header = parseCsvLine(line);
+                continue;
+            }
+
+            rowNumber++;
+            batch.add(parseRow(rowNumber, line, jsonLines, header));
+            if (batch.size() == BATCH_SIZE) {
+                commitBatch(batch, isSeller, state, result);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            commitBatch(batch, isSeller, state, result);
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        result.setTotalRows(rowNumber);
+        result.setElapsedMillis(elapsedNanos / 1_000_000);
+        result.setRowsPerSecond(elapsedNanos > 0 ? rowNumber / (elapsedNanos / 1_000_000_000.0) : 0);
+        return result;
+    }
+
+    private ParsedRow parseRow(int rowNumber, String line, boolean jsonLines, List<String> header) {
+        try {
+            Book book = jsonLines ? objectMapper.readValue(line, Book.class) : fromCsv(header, parseCsvLine(line));
+            Set<ConstraintViolation<Book>> violations = validator.validate(book);
+            if (!violations.isEmpty()) {
+                StringJoiner messages = new StringJoiner("; ");
+                for (ConstraintViolation<Book> violation : violations) {
+                    messages.add(violation.getMessage());
+                }
+                return new ParsedRow(rowNumber, null, messages.toString());
+            }
+            if (book.getQuantity() <= 0) {
+                book.setQuantity(1);
+            }
+            try {
+                book.setIsbn(Isbn.canonicalize(book.getIsbn()));
+            } catch (IllegalArgumentException e) {
+                return new ParsedRow(rowNumber, null, e.getMessage());
+            }
+            return new ParsedRow(rowNumber, book, null);
+        } catch (Exception e) {
+            return new ParsedRow(rowNumber, null, "Unreadable row: " + e.getMessage());
+        }
+    }
+
+    private void commitBatch(List<ParsedRow> batch, boolean isSeller, ImportState state, BookImportResult result) {
+        Map<String, Object> updates = new HashMap<>();
+        Map<String, Integer> increments = new HashMap<>();
+        Map<String, Book> created = new LinkedHashMap<>();
+        Map<String, Book> listed = new LinkedHashMap<>();
+        List<BookImportRowResult> rows = new ArrayList<>();
+        Map<String, String> claimedKeys = claimNewListingKeys(batch, isSeller, state);
+
+        for (ParsedRow row : batch) {
+            if (row.book == null) {
+                rows.add(new BookImportRowResult(row.number, "failed", null, row.error));
+                continue;
+            }
+
+            Book book = row.book;
+            String listingKey = listingKey(book);
+            String existingId = state.listingIds.get(listingKey);
+
+            if (existingId == null) {
+                rows.add(new BookImportRowResult(row.number, "failed", null, "Listing key could not be claimed"));
+            } else if (existingId.equals(claimedKeys.get(listingKey)) && !created.containsKey(existingId)) {
+                book.setBookId(existingId);
+                book.setCreatedAt(System.currentTimeMillis());
+                created.put(existingId, book);
+                listed.put(existingId, book);
+                rows.add(new BookImportRowResult(row.number, "created", existingId, null));
+            } else if (created.containsKey(existingId)) {
+                Book pending = created.get(existingId);
+                pending.setQuantity(pending.getQuantity() + book.getQuantity());
+                rows.add(new BookImportRowResult(row.number, "merged", existingId, null));
+            } else {
+                increments.merge(existingId, book.getQuantity(), Integer::sum);
+                book.setBookId(existingId);
+                listed.putIfAbsent(existingId, book);
+                rows.add(new BookImportRowResult(row.number, "merged", existingId, null));
+            }
+        }
+
+        // One wishlist pass for the whole batch; wishlisted new books go live as available, like single adds
+        Map<String, Set<String>> subscribers = listed.isEmpty()
+                ? new HashMap<>()
+                : wishlistService.findSubscribersForBooks(listed.values()).join();
+        for (Book book : created.values()) {
+            if (!subscribers.getOrDefault(book.getBookId(), Collections.emptySet()).isEmpty()) {
+                book.setStatus("available");
+            }
+            book.setUpdatedAt(System.currentTimeMillis());
+            updates.put("books/" + book.getBookId(), book);
+        }
+        Map<String, Book> relisted = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : increments.entrySet()) {
+            Book previous = catalogIndex.get(entry.getKey());
+            if (previous != null) {
+                relisted.put(entry.getKey(), previous);
+            }
+            updates.put("books/" + entry.getKey() + "/quantity", ServerValue.increment(entry.getValue()));
+            updates.put("books/" + entry.getKey() + "/status", "available");
+            updates.put("books/" + entry.getKey() + "/updatedAt", System.currentTimeMillis());
+        }
+
+        boolean committed = true;
+        String commitError = null;
+        if (!updates.isEmpty()) {
+            try {
+                rootReference.updateChildrenAsync(updates).get();
+            } catch (Exception e) {
+                committed = false;
+                commitError = "Batch commit failed: " + e.getMessage();
+            }
+        }
+
+        for (BookImportRowResult row : rows) {
+            if (!committed && !"failed".equals(row.getStatus())) {
+                row.setStatus("failed");
+                row.setBookId(null);
+                row.setMessage(commitError);
+            }
+            if ("failed".equals(row.getStatus())) {
+                result.setFailed(result.getFailed() + 1);
+            } else {
+                result.setImported(result.getImported() + 1);
+            }
+            result.getRows().add(row);
+        }
+        result.setBatches(result.getBatches() + 1);
+
+        if (!committed) {
+            for (Map.Entry<String, String> claim : claimedKeys.entrySet()) {
+                state.listingIds.remove(claim.getKey());
+                rootReference.child("listingKeys").child(claim.getKey()).removeValueAsync();
+            }
+            return;
+        }
+        for (Book book : listed.values()) {
+            String message = BookService.availabilityMessage(book);
+            for (String userEmail : subscribers.getOrDefault(book.getBookId(), Collections.emptySet())) {
+                notificationService.sendNotification(userEmail, message);
+            }
+        }
+        // Saved searches hear about imported listings the same way as single adds and relists
+        for (Book book : created.values()) {
+            savedSearchService.alertIfNewlyVisible(book, null, book.getStatus());
+        }
+        for (Book previous : relisted.values()) {
+            savedSearchService.alertIfNewlyVisible(previous, previous.getStatus(), "available");
+        }
+    }
+
+    /**
+     * Claims listingKeys/<key> for each listing key in the batch that this import has not resolved yet,
+     * through the same transaction addBook uses, so an import and a concurrent add never both create the
+     * listing. Returns the keys claimed for new listings with their new ids; keys already held resolve to
+     * the existing listing in state.listingIds.
+     */
+    private Map<String, String> claimNewListingKeys(List<ParsedRow> batch, boolean isSeller, ImportState state) {
+        Map<String, String> candidates = new LinkedHashMap<>();
+        for (ParsedRow row : batch) {
+            if (row.book == null) {
+                continue;
+            }
+            if (!isSeller) {
+                row.book.setPrice(0.0);
+            }
+            String listingKey = listingKey(row.book);
+            if (state.findListing(listingKey, row.book.getUserEmail(), catalogIndex) == null) {
+                candidates.putIfAbsent(listingKey, UUID.randomUUID().toString());
+            }
+        }
+
+        Map<String, CompletableFuture<String>> claims = new LinkedHashMap<>();
+        for (Map.Entry<String, String> candidate : candidates.entrySet()) {
+            claims.put(candidate.getKey(), bookService.claimListingKey(candidate.getKey(), candidate.getValue()));
+        }
+        Map<String, String> claimed = new HashMap<>();
+        for (Map.Entry<String, CompletableFuture<String>> claim : claims.entrySet()) {
+            try {
+                String ownerId = claim.getValue().join();
+                state.listingIds.put(claim.getKey(), ownerId);
+                if (ownerId.equals(candidates.get(claim.getKey()))) {
+                    claimed.put(claim.getKey(), ownerId);
+                }
+            } catch (CompletionException e) {
+                System.err.println("Listing key claim failed during import: " + e.getMessage());
+            }
+        }
+        return claimed;
+    }
+
+    private static String listingKey(Book book) {
+        return IndexKeys.listingKey(book.getUserEmail(), book.getIsbn(), book.getName(), book.getAuthor(),
+                book.getPrice());
+    }
+
+    private Book fromCsv(List<String> header, List<String> values) {
+        Book book = new Book();
+        for (int i = 0; i < header.size() && i < values.size(); i++) {
+            String value = values.get(i).trim();
+            if (value.isEmpty()) {
+                continue;
+            }
+            switch (header.get(i).trim()) {
+                case "userId": book.setUserId(value); break;
+                case "userEmail": book.setUserEmail(value); break;
+                case "name": book.setName(value); break;
+                case "author": book.setAuthor(value); break;
+                case "price": book.setPrice(Double.parseDouble(value)); break;
+                case "isbn": book.setIsbn(value); break;
+                case "status": book.setStatus(value); break;
+                case "genre": book.setGenre(value); break;
+                case "condition": book.setCondition(value); break;
+                case "description": book.setDescription(value); break;
+                case "imageUrl": book.setImageUrl(value); break;
+                case "quantity": book.setQuantity(Integer.parseInt(value)); break;
+                default: break;
+            }
+        }
+        return book;
+    }
+
+    static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        values.add(current.toString());
+        return values;
+    }
+
+    private static class ParsedRow {
+        final int number;
+        final Book book;
+        final String error;
+
+        ParsedRow(int number, Book book, String error) {
+            this.number = number;
+            this.book = book;
+            this.error = error;
+        }
+    }
+
+    // Listing keys seen during one import, so later rows merge into listings created by earlier batches
+    private static class ImportState {
+        final Map<String, String> listingIds = new HashMap<>();
+        final Set<String> loadedOwners = new HashSet<>();
+
+        String findListing(String listingKey, String ownerEmail, BookCatalogIndex catalogIndex) {
+            String owner = IndexKeys.normalizeText(ownerEmail);
+            if (loadedOwners.add(owner)) {
+                for (Book book : catalogIndex.booksOwnedBy(ownerEmail)) {
+                    listingIds.putIfAbsent(IndexKeys.listingKey(book.getUserEmail(), book.getIsbn(),
+                            book.getName(), book.getAuthor(), book.getPrice()), book.getBookId());
+                }
+            }
+            return listingIds.get(listingKey);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Canonical ISBN-13 -> every live listing of that edition, so same-edition lookups (price
+ * comparison, exchange offers, wishlist matches) are one keyed read. Listings stored before ISBNs
+ * were canonicalized are indexed under their canonical form too; invalid ISBNs are not indexed.
+ */
+@Service
+public class BookIsbnIndex implements BookCatalogIndex.CatalogListener {
+
+    private final Map<String, NavigableSet<String>> idsByIsbn = new ConcurrentHashMap<>();
+    private final BookCatalogIndex catalogIndex;
+
+    public BookIsbnIndex(BookCatalogIndex catalogIndex) {
+        this.catalogIndex = catalogIndex;
+        catalogIndex.addListener(this);
+    }
+
+    @Override
+    public void onBookUpserted(Book previous, Book current) {
+        if (previous != null) {
+            onBookRemoved(previous);
+        }
+        String isbn = Isbn.tryCanonicalize(current.getIsbn());
+        if (isbn != null) {
+            idsByIsbn.computeIfAbsent(isbn, k -> new ConcurrentSkipListSet<>()).add(current.getBookId());
+        }
+    }
+
+    @Override
+    public void onBookRemoved(Book previous) {
+        String isbn = Isbn.tryCanonicalize(previous.getIsbn());
+        if (isbn == null) {
+            return;
+        }
+        idsByIsbn.computeIfPresent(isbn, (key, ids) -> {
+            ids.remove(previous.getBookId());
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /** Listings of the edition in any ISBN-10 or ISBN-13 spelling; throws IllegalArgumentException if invalid. */
+    public List<Book> listings(String isbn) {
+        String canonical = Isbn.canonicalize(isbn);
+        if (canonical == null) {
+            throw new IllegalArgumentException("ISBN is required");
+        }
+        List<Book> books = new ArrayList<>();
+        for (String bookId : idsByIsbn.getOrDefault(canonical, Collections.emptyNavigableSet())) {
+            Book book = catalogIndex.get(bookId);
+            if (book != null) {
+                books.add(book);
+            }
+        }
+        return books;
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Inverted index over the name, author, genre and description of every catalog book, ranked with
+ * BM25F: per-field term frequencies are length-normalized, boosted per field and weighted by IDF.
+ * Postings are kept in a sorted map so a query term also matches every indexed term it is a prefix of
+ * (at a reduced weight); multiple query terms are combined with AND.
+ */
+@Service
+public class BookSearchIndex implements BookCatalogIndex.CatalogListener {
+
+    private static final int FIELDS = 4; // name, author, genre, description
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double PREFIX_MATCH_WEIGHT = 0.5;
+
+    // term -> (bookId -> term frequency per field)
+    private final TreeMap<String, Map<String, int[]>> postings = new TreeMap<>();
+    private final Map<String, int[]> fieldLengths = new HashMap<>();
+    private final Map<String, Set<String>> termsByBook = new HashMap<>();
+    private final long[] totalFieldLengths = new long[FIELDS];
+    private final double[] boosts;
+    private final BookCatalogIndex catalogIndex;
+
+    public BookSearchIndex(BookCatalogIndex catalogIndex,
+                           @Value("${books.search.boost.name:3.0}") double nameBoost,
+                           @Value("${books.search.boost.author:2.0}") double authorBoost,
+                           @Value("${books.search.boost.genre:1.0}") double genreBoost,
+                           @Value("${books.search.boost.description:0.5}") double descriptionBoost) {
+        this.catalogIndex = catalogIndex;
+        this.boosts = new double[] {nameBoost, authorBoost, genreBoost, descriptionBoost};
+        catalogIndex.addListener(this);
+    }
+
+    @Override
+    public synchronized void onBookUpserted(Book previous, Book current) {
+        unindex(current.getBookId());
+        index(current);
+    }
+
+    @Override
+    public synchronized void onBookRemoved(Book previous) {
+        unindex(previous.getBookId());
+    }
+
+    /** A matching book with its relevance score. */
+    public static class Hit {
+        private final Book book;
+        private final double score;
+
+        Hit(Book book, double score) {
+            this.book = book;
+            this.score = score;
+        }
+
+        public Book getBook() { return book; }
+
+        public double getScore() { return score; }
+    }
+
+    // Best hit first: higher score, then lower bookId
+    private static final Comparator<Hit> RANKING = Comparator.comparingDouble(Hit::getScore).reversed()
+            .thenComparing(hit -> hit.getBook().getBookId());
+
+    /**
+     * Returns the best limit books accepted by the filter that match every term of the query, best match
+     * first. A blank query matches the whole catalog, as the old substring scan did.
+     */
+    public List<Book> search(String query, Predicate<Book> filter, int limit) {
+        List<Book> books = new ArrayList<>();
+        for (Hit hit : searchPage(query, filter, null, null, limit)) {
+            books.add(hit.getBook());
+        }
+        return books;
+    }
+
+    /**
+     * One page of ranked hits accepted by the filter, starting strictly after the (afterScore, afterBookId)
+     * position of the previous page. Only a heap of the page size is kept while scanning the matches.
+     */
+    public List<Hit> searchPage(String query, Predicate<Book> filter, Double afterScore, String afterBookId,
+                                int limit) {
+        // Worst hit at the head, so it is the one evicted
+        PriorityQueue<Hit> top = new PriorityQueue<>(limit + 1, RANKING.reversed());
+
+        for (Map.Entry<String, Double> entry : score(query).entrySet()) {
+            double score = entry.getValue();
+            String bookId = entry.getKey();
+            if (afterBookId != null && !ranksAfter(score, bookId, afterScore, afterBookId)) {
+                continue;
+            }
+            if (top.size() == limit) {
+                Hit worst = top.peek();
+                if (ranksAfter(score, bookId, worst.getScore(), worst.getBook().getBookId())) {
+                    continue;
+                }
+            }
+            Book book = catalogIndex.get(bookId);
+            if (book == null || !filter.test(book)) {
+                continue;
+            }
+            top.add(new Hit(book, score));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        List<Hit> page = new ArrayList<>(top);
+        page.sort(RANKING);
+        return page;
+    }
+
+    private boolean ranksAfter(double score, String bookId, double otherScore, String otherBookId) {
+        if (score != otherScore) {
+            return score < otherScore;
+        }
+        return bookId.compareTo(otherBookId) > 0;
+    }
+
+    // bookId -> BM25F score for every book matching all query terms; a blank query scores every book 0
+    private synchronized Map<String, Double> score(String query) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            Map<String, Double> all = new HashMap<>();
+            for (String bookId : fieldLengths.keySet()) {
+                all.put(bookId, 0.0);
+            }
+            return all;
+        }
+
+        double[] averageLengths = new double[FIELDS];
+        for (int field = 0; field < FIELDS; field++) {
+            averageLengths[field] = fieldLengths.isEmpty() ? 0 : (double) totalFieldLengths[field] / fieldLengths.size();
+        }
+
+        Map<String, Double> scores = null;
+        for (String term : new LinkedHashSet<>(terms)) {
+            Map<String, Double> termScores = scoreTerm(term, averageLengths);
+            if (scores == null) {
+                scores = termScores;
+            } else {
+                scores.keySet().retainAll(termScores.keySet());
+                for (Map.Entry<String, Double> entry : scores.entrySet()) {
+                    entry.setValue(entry.getValue() + termScores.get(entry.getKey()));
+                }
+            }
+            if (scores.isEmpty()) {
+                break;
+            }
+        }
+        return scores;
+    }
+
+    // Best score per book over every indexed term starting with the query term
+    private Map<String, Double> scoreTerm(String term, double[] averageLengths) {
+        int documents = fieldLengths.size();
+        Map<String, Double> scores = new HashMap<>();
+
+        for (Map.Entry<String, Map<String, int[]>> posting
+                : postings.subMap(term, true, term + Character.MAX_VALUE, false).entrySet()) {
+            Map<String, int[]> books = posting.getValue();
+            double idf = Math.log(1 + (documents - books.size() + 0.5) / (books.size() + 0.5));
+            double matchWeight = posting.getKey().equals(term) ? 1.0 : PREFIX_MATCH_WEIGHT;
+
+            for (Map.Entry<String, int[]> hit : books.entrySet()) {
+                int[] lengths = fieldLengths.get(hit.getKey());
+                double weightedFrequency = 0;
+                for (int field = 0; field < FIELDS; field++) {
+                    int frequency = hit.getValue()[field];
+                    if (frequency > 0) {
+                        double norm = averageLengths[field] > 0
+                                ? 1 - B + B * lengths[field] / averageLengths[field]
+                                : 1;
+                        weightedFrequency += boosts[field] * frequency / norm;
+                    }
+                }
+                double score = matchWeight * idf * weightedFrequency * (K1 + 1) / (weightedFrequency + K1);
+                scores.merge(hit.getKey(), score, Math::max);
+            }
+        }
+        return scores;
+    }
+
+    private void index(Book book) {
+        String[] values = {book.getName(), book.getAuthor(), book.getGenre(), book.getDescription()};
+        int[] lengths = new int[FIELDS];
+        Set<String> bookTerms = new HashSet<>();
+
+        for (int field = 0; field < FIELDS; field++) {
+            List<String> terms = tokenize(values[field]);
+            lengths[field] = terms.size();
+            totalFieldLengths[field] += terms.size();
+            for (String term : terms) {
+                postings.computeIfAbsent(term, k -> new HashMap<>())
+                        .computeIfAbsent(book.getBookId(), k -> new int[FIELDS])[field]++;
+                bookTerms.add(term);
+            }
+        }
+        fieldLengths.put(book.getBookId(), lengths);
+        termsByBook.put(book.getBookId(), bookTerms);
+    }
+
+    private void unindex(String bookId) {
+        int[] lengths = fieldLengths.remove(bookId);
+        if (lengths != null) {
+            for (int field = 0; field < FIELDS; field++) {
+                totalFieldLengths[field] -= lengths[field];
+            }
+        }
+        Set<String> terms = termsByBook.remove(bookId);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            Map<String, int[]> books = postings.get(term);
+            if (books != null && books.remove(bookId) != null && books.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        for (String term : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+}
@@ -1,38 +1,87 @@
 package com.example.demo.service;
 
 import com.example.demo.model.Book;
-import com.example.demo.model.WishlistItem;
+import com.example.demo.model.BookPage;
+import com.example.demo.model.BookStatusChangedEvent;
 import com.google.firebase.database.*;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import com.google.api.core.ApiFuture;
 import com.google.firebase.FirebaseApp;
 
 @Service
 public class BookService {
 
+    private static final Duration DEFAULT_ADD_TIMEOUT = Duration.ofSeconds(30);
+    // addBookAsync progress: the timeout and the listing write race for the first transition out of RUNNING
+    private static final int ADD_RUNNING = 0;
+    private static final int ADD_WRITING = 1;
+    private static final int ADD_ABANDONED = 2;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_SEARCH_RESULTS = 200;
+
+    private DatabaseReference rootReference;
     private DatabaseReference databaseReference;
     private final ImageUploadService imageUploadService;
     private final FirebaseApp firebaseApp;
+    private final BookCatalogIndex catalogIndex;
+    private final BookSearchIndex searchIndex;
+    private final BookFuzzyIndex fuzzyIndex;
+    private final BookSortIndex sortIndex;
+    private final SavedSearchService savedSearchService;
+    private final WishlistService wishlistService;
+    private final BookCache bookCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ExecutorService uploadExecutor = Executors.newFixedThreadPool(4);
 
     @Autowired
     private final NotificationService notificationService;
    
 
-public BookService(ImageUploadService imageUploadService, FirebaseApp firebaseApp, NotificationService notificationService) {
+public BookService(ImageUploadService imageUploadService, FirebaseApp firebaseApp, NotificationService notificationService,
+                   BookCatalogIndex catalogIndex, BookSearchIndex searchIndex, WishlistService wishlistService,
+                   BookCache bookCache, ApplicationEventPublisher eventPublisher, BookFuzzyIndex fuzzyIndex,
+                   BookSortIndex sortIndex, SavedSearchService savedSearchService) {
     this.imageUploadService = imageUploadService;
     this.firebaseApp = firebaseApp;
     this.notificationService = notificationService;
+    this.catalogIndex = catalogIndex;
+    this.searchIndex = searchIndex;
+    this.wishlistService = wishlistService;
+    this.bookCache = bookCache;
+    this.eventPublisher = eventPublisher;
+    this.fuzzyIndex = fuzzyIndex;
+    this.sortIndex = sortIndex;
+    this.savedSearchService = savedSearchService;
 }
 
     @PostConstruct
     private void init() {
-        this.databaseReference = FirebaseDatabase.getInstance(firebaseApp).getReference("books");
+        this.rootReference = FirebaseDatabase.getInstance(firebaseApp).getReference();
+        this.databaseReference = rootReference.child("books");
+        catalogIndex.whenCaughtUp().thenRun(this::backfillListingKeys);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        uploadExecutor.shutdown();
     }
 
     private String sanitizeEmail(String email) {
@@ -48,202 +97,286 @@ public BookService(ImageUploadService imageUploadService, FirebaseApp firebaseAp
     
 
     public String addBook(Book bookRequest, MultipartFile imageFile, boolean isSeller) throws Exception {
-        CompletableFuture<String> future = new CompletableFuture<>();
-    
-        databaseReference.orderByChild("userEmail").equalTo(bookRequest.getUserEmail())
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(DataSnapshot snapshot) {
-                        boolean bookExists = false;
-    
-                        for (DataSnapshot bookSnapshot : snapshot.getChildren()) {
-                            Book existingBook = bookSnapshot.getValue(Book.class);
-    
-                            if (existingBook != null
-                                    && existingBook.getName().equalsIgnoreCase(bookRequest.getName())
-                                    && existingBook.getAuthor().equalsIgnoreCase(bookRequest.getAuthor())
-                                    && existingBook.getIsbn().equalsIgnoreCase(bookRequest.getIsbn())
-                                    && existingBook.getPrice().equals(bookRequest.getPrice())) {
-    
-                                // Update quantity
-                                int updatedQuantity = existingBook.getQuantity() + bookRequest.getQuantity();
-                                databaseReference.child(existingBook.getBookId()).child("quantity")
-                                        .setValueAsync(updatedQuantity);
-    
-                                // Update status to available
-                                databaseReference.child(existingBook.getBookId()).child("status")
-                                        .setValueAsync("available");
-    
-                                // Notify users with this book in wishlist
-                                DatabaseReference wishlistRef = FirebaseDatabase.getInstance(firebaseApp)
-                                        .getReference("wishlists");
-    
-                                wishlistRef.addListenerForSingleValueEvent(new ValueEventListener() {
-                                    @Override
-                                    public void onDataChange(DataSnapshot wishlistSnapshot) {
-                                        for (DataSnapshot userSnap : wishlistSnapshot.getChildren()) {
-                                            for (DataSnapshot wishSnap : userSnap.getChildren()) {
-                                                WishlistItem item = wishSnap.getValue(WishlistItem.class);
-                                                if (item == null) continue;
-    
-                                                Book wishBook = item.getBook();
-                                                if (wishBook == null) continue;
-    
-                                                if (wishBook.getName().equalsIgnoreCase(bookRequest.getName())
-                                                        && wishBook.getAuthor().equalsIgnoreCase(bookRequest.getAuthor())
-                                                        && wishBook.getIsbn().equalsIgnoreCase(bookRequest.getIsbn())) {
-    
-                                                    String message = "The book \"" + wishBook.getName() +
-                                                            "\" by " + wishBook.getAuthor() + " is now available!";
-                                                  
-                                                    notificationService.sendNotification(item.getUserEmail(), message);
-                                                   
-                                                }
-                                            }
-                                        }
-                                        future.complete(existingBook.getBookId());
-                                    }
-    
-                                    @Override
-                                    public void onCancelled(DatabaseError error) {
-                                        future.completeExceptionally(error.toException());
-                                    }
-                                });
-    
-                                bookExists = true;
-                                return;
-                            }
+        return addBookAsync(bookRequest, imageFile, isSeller).get();
+    }
+
+    public CompletableFuture<String> addBookAsync(Book bookRequest, MultipartFile imageFile, boolean isSeller) {
+        return addBookAsync(bookRequest, imageFile, isSeller, DEFAULT_ADD_TIMEOUT);
+    }
+
+    /**
+     * Adds a listing without blocking the caller; served by POST /api/books/add-async. The image upload
+     * starts right away and runs alongside the duplicate check, unless the owner already has a live
+     * listing under the same key and the request is most likely a quantity bump. ImageUploadService has
+     * no delete, so an upload that has started cannot be called back: a relist that was not foreseen, or
+     * a request abandoned mid-upload, leaves its image unused. The ISBN is stored in canonical ISBN-13
+     * form; an invalid one is rejected with IllegalArgumentException before anything is written.
+     *
+     * The timeout covers everything up to the listing write. Once it fires nothing more is written, an
+     * upload that has not started yet never does, and a claimed listing key is released; a write that had
+     * already started is waited for instead. Wishlist notifications after the write do not fail the add.
+     */
+    public CompletableFuture<String> addBookAsync(Book bookRequest, MultipartFile imageFile, boolean isSeller,
+                                                  Duration timeout) {
+        if (!isSeller) {
+            bookRequest.setPrice(0.0);
+        }
+        bookRequest.setIsbn(Isbn.canonicalize(bookRequest.getIsbn()));
+
+        String listingKey = listingKey(bookRequest);
+        String newBookId = UUID.randomUUID().toString();
+        AtomicInteger state = new AtomicInteger(ADD_RUNNING);
+        CompletableFuture<String> eagerUpload = likelyRelist(bookRequest, listingKey) ? null
+                : startUpload(imageFile, state);
+        CompletableFuture<String> outcome = new CompletableFuture<>();
+
+        claimListingKey(listingKey, newBookId)
+                .thenCompose(ownerId -> {
+                    if (!ownerId.equals(newBookId)) {
+                        if (!state.compareAndSet(ADD_RUNNING, ADD_WRITING)) {
+                            throw new CompletionException(new TimeoutException("Adding the book timed out"));
                         }
-    
-                        // If book does not exist
-                        if (!bookExists) {
-                            try {
-                                String bookId = UUID.randomUUID().toString();
-                                bookRequest.setBookId(bookId);
-    
-                                String imageUrl = imageUploadService.uploadImage(imageFile);
-                                bookRequest.setImageUrl(imageUrl);
-    
-                                if (!isSeller) {
-                                    bookRequest.setPrice(0.0);
+                        return relistBook(ownerId, bookRequest);
+                    }
+                    CompletableFuture<String> upload = eagerUpload != null ? eagerUpload : startUpload(imageFile, state);
+                    // Only failures up to and including the books write get here, so the key is never
+                    // released from under a listing that exists
+                    return upload
+                            .thenCompose(imageUrl -> {
+                                if (!state.compareAndSet(ADD_RUNNING, ADD_WRITING)) {
+                                    throw new CompletionException(new TimeoutException("Adding the book timed out"));
                                 }
-    
-                                databaseReference.child(bookId).setValueAsync(bookRequest);
-    
-                                DatabaseReference wishlistRef = FirebaseDatabase.getInstance(firebaseApp)
-                                        .getReference("wishlists");
-    
-                                wishlistRef.addListenerForSingleValueEvent(new ValueEventListener() {
-                                    @Override
-                                    public void onDataChange(DataSnapshot wishlistSnapshot) {
-                                        for (DataSnapshot userSnap : wishlistSnapshot.getChildren()) {
-                                            for (DataSnapshot wishSnap : userSnap.getChildren()) {
-                                                WishlistItem item = wishSnap.getValue(WishlistItem.class);
-                                                if (item == null) continue;
-    
-                                                Book wishBook = item.getBook();
-                                                if (wishBook == null) continue;
-    
-                                                if (wishBook.getName().equalsIgnoreCase(bookRequest.getName())
-                                                        && wishBook.getAuthor().equalsIgnoreCase(bookRequest.getAuthor())
-                                                        && wishBook.getIsbn().equalsIgnoreCase(bookRequest.getIsbn())) {
-    
-                                                    databaseReference.child(bookId)
-                                                            .child("status").setValueAsync("available");
-    
-                                                    String message = "The book \"" + wishBook.getName() +
-                                                            "\" by " + wishBook.getAuthor() + " is now available!";
-                                                    notificationService.sendNotification(item.getUserEmail(), message);
-                                                }
-                                            }
-                                        }
-    
-                                        future.complete(bookId);
-                                    }
-    
-                                    @Override
-                                    public void onCancelled(DatabaseError error) {
-                                        future.completeExceptionally(error.toException());
-                                    }
-                                });
-    
-                            } catch (Exception e) {
-                                future.completeExceptionally(e);
-                            }
-                        }
+                                return writeBook(bookRequest, newBookId, listingKey, imageUrl);
+                            })
+                            .whenComplete((bookId, error) -> {
+                                if (error != null) {
+                                    releaseListingKey(listingKey, newBookId);
+                                }
+                            })
+                            .thenCompose(bookId -> announceBook(bookRequest));
+                })
+                .whenComplete((bookId, error) -> {
+                    if (error != null) {
+                        outcome.completeExceptionally(error);
+                    } else {
+                        outcome.complete(bookId);
                     }
-    
-                    @Override
-                    public void onCancelled(DatabaseError error) {
-                        future.completeExceptionally(error.toException());
+                });
+
+        CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS).execute(() -> {
+            if (state.compareAndSet(ADD_RUNNING, ADD_ABANDONED)) {
+                if (eagerUpload != null) {
+                    eagerUpload.cancel(false);
+                }
+                outcome.completeExceptionally(new TimeoutException("Adding the book timed out"));
+            }
+        });
+        return outcome;
+    }
+
+    private CompletableFuture<String> startUpload(MultipartFile imageFile, AtomicInteger state) {
+        return CompletableFuture.supplyAsync(() -> {
+            // Checked on the upload thread, so an upload still queued when the request is abandoned never starts
+            if (state.get() == ADD_ABANDONED) {
+                throw new CompletionException(new TimeoutException("Adding the book timed out"));
+            }
+            try {
+                return imageUploadService.uploadImage(imageFile);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, uploadExecutor);
+    }
+
+    // Whether the owner already has a live listing under this key; the claim still decides
+    private boolean likelyRelist(Book bookRequest, String listingKey) {
+        if (!catalogIndex.whenReady().isDone()) {
+            return false;
+        }
+        for (Book book : catalogIndex.booksOwnedBy(bookRequest.getUserEmail())) {
+            if (listingKey.equals(listingKey(book))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String listingKey(Book book) {
+        return IndexKeys.listingKey(book.getUserEmail(), book.getIsbn(), book.getName(), book.getAuthor(),
+                book.getPrice());
+    }
+
+    /**
+     * Claims listingKeys/<key> for the new book id, or returns the id of the live listing already holding it.
+     * A key left behind by a listing that is no longer in the catalog is taken over, which is only decided
+     * once the catalog has caught up with Firebase. Shared with the bulk import, so both paths agree on
+     * which listing a key belongs to.
+     */
+    CompletableFuture<String> claimListingKey(String listingKey, String newBookId) {
+        return catalogIndex.whenCaughtUp().thenCompose(unused -> runListingKeyClaim(listingKey, newBookId));
+    }
+
+    private CompletableFuture<String> runListingKeyClaim(String listingKey, String newBookId) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+
+        rootReference.child("listingKeys").child(listingKey).runTransaction(new Transaction.Handler() {
+            @Override
+            public Transaction.Result doTransaction(MutableData currentData) {
+                String ownerId = currentData.getValue(String.class);
+                if (ownerId != null && catalogIndex.contains(ownerId)) {
+                    return Transaction.abort();
+                }
+                currentData.setValue(newBookId);
+                return Transaction.success(currentData);
+            }
+
+            @Override
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot snapshot) {
+                if (error != null) {
+                    future.completeExceptionally(error.toException());
+                    return;
+                }
+                String ownerId = snapshot.getValue(String.class);
+                future.complete(ownerId != null ? ownerId : newBookId);
+            }
+        });
+
+        return future;
+    }
+
+    // Adds the requested quantity and marks the listing available in one atomic multi-path update
+    private CompletableFuture<String> relistBook(String bookId, Book bookRequest) {
+        Book existing = catalogIndex.get(bookId);
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("books/" + bookId + "/quantity", ServerValue.increment(bookRequest.getQuantity()));
+        updates.put("books/" + bookId + "/status", "available");
+        updates.put("books/" + bookId + "/updatedAt", System.currentTimeMillis());
+
+        return toCompletable(rootReference.updateChildrenAsync(updates))
+                .thenCompose(unused -> notifyWishlistSubscribers(bookRequest))
+                .thenApply(matched -> {
+                    if (existing != null) {
+                        savedSearchService.alertIfNewlyVisible(existing, existing.getStatus(), "available");
                     }
+                    return bookId;
                 });
-    
-        return future.get();
     }
-    
 
+    private CompletableFuture<String> writeBook(Book bookRequest, String bookId, String listingKey, String imageUrl) {
+        bookRequest.setBookId(bookId);
+        bookRequest.setImageUrl(imageUrl);
+        bookRequest.setCreatedAt(System.currentTimeMillis());
+        bookRequest.setUpdatedAt(bookRequest.getCreatedAt());
 
-    public CompletableFuture<List<Book>> getBooksByRole(String role, String userEmail) {
-        CompletableFuture<List<Book>> future = new CompletableFuture<>();
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("books/" + bookId, bookRequest);
+        updates.put("listingKeys/" + listingKey, bookId);
+
+        return toCompletable(rootReference.updateChildrenAsync(updates)).thenApply(unused -> bookId);
+    }
+
+    // Follow-up of a written listing: the book exists whatever happens here, so failures are only logged
+    private CompletableFuture<String> announceBook(Book book) {
+        return notifyWishlistSubscribers(book)
+                .exceptionally(error -> {
+                    System.err.println("Wishlist notification for " + book.getBookId() + " failed: "
+                            + error.getMessage());
+                    return false;
+                })
+                .thenApply(matched -> {
+                    String status = book.getStatus();
+                    if (matched) {
+                        databaseReference.child(book.getBookId()).updateChildrenAsync(statusUpdate("available"));
+                        status = "available";
+                    }
+                    savedSearchService.alertIfNewlyVisible(book, null, status);
+                    return book.getBookId();
+                });
+    }
 
-        databaseReference.addListenerForSingleValueEvent(new ValueEventListener() {
+    // Removes listingKeys/<key> only while it still points at bookId, so a key another listing took is kept
+    private void releaseListingKey(String listingKey, String bookId) {
+        rootReference.child("listingKeys").child(listingKey).runTransaction(new Transaction.Handler() {
+            @Override
+            public Transaction.Result doTransaction(MutableData currentData) {
+                String ownerId = currentData.getValue(String.class);
+                if (ownerId == null) {
+                    return Transaction.success(currentData); // retried if the server holds the key
+                }
+                if (!ownerId.equals(bookId)) {
+                    return Transaction.abort();
+                }
+                currentData.setValue(null);
+                return Transaction.success(currentData);
+            }
+
+            @Override
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot snapshot) {
+                if (error != null) {
+                    System.err.println("Releasing listing key " + listingKey + " failed: " + error.getMessage());
+                }
+            }
+        });
+    }
+
+    // Writes listingKeys entries for listings created before the dedup index existed
+    private void backfillListingKeys() {
+        rootReference.child("listingKeys").addListenerForSingleValueEvent(new ValueEventListener() {
             @Override
             public void onDataChange(DataSnapshot snapshot) {
-                List<Book> filteredBooks = new ArrayList<>();
-                String sanitizedEmail = sanitizeEmail(userEmail);
-
-                for (DataSnapshot bookSnapshot : snapshot.getChildren()) {
-                    Book book = bookSnapshot.getValue(Book.class);
-                    if (book == null) continue;
-
-                    String status = book.getStatus() != null ? book.getStatus().toLowerCase() : "";
-                    String email = book.getUserEmail() != null ? sanitizeEmail(book.getUserEmail()).toLowerCase() : "";
-
-                    switch (role.toLowerCase()) {
-                        case "buyer":
-                            if ("available".equals(status) || "donatable".equals(status)) {
-                                filteredBooks.add(book);
-                            }
-                            break;
-                        case "borrower":
-                            if ("lending".equals(status)) {
-                                filteredBooks.add(book);
-                            }
-                            break;
-                        case "donator":
-                            if ("donating".equals(status)) {
-                                filteredBooks.add(book);
-                            }
-                            break;
-                        case "seller":
-                        case "lender":
-                            if (sanitizedEmail != null && email.equals(sanitizedEmail)) {
-                                filteredBooks.add(book);
-                            }
-                            break;
-                        case "exchanger":
-                            if ("exchangeable".equals(status)) {
-                                filteredBooks.add(book);
-                            }
-                            break;
-                        default:
-                            break;
+                Map<String, Object> updates = new HashMap<>();
+                for (Book book : catalogIndex.all()) {
+                    String key = listingKey(book);
+                    if (!snapshot.hasChild(key) && !updates.containsKey("listingKeys/" + key)) {
+                        updates.put("listingKeys/" + key, book.getBookId());
                     }
                 }
-
-                future.complete(filteredBooks);
+                if (!updates.isEmpty()) {
+                    rootReference.updateChildrenAsync(updates);
+                }
             }
 
             @Override
             public void onCancelled(DatabaseError error) {
-                future.completeExceptionally(error.toException());
+                System.err.println("Listing key backfill failed: " + error.getMessage());
             }
         });
+    }
 
+    private CompletableFuture<Void> toCompletable(ApiFuture<Void> write) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        write.addListener(() -> {
+            try {
+                write.get();
+                future.complete(null);
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }, Runnable::run);
         return future;
     }
 
+    // Notifies every user wishlisting this (name, author, ISBN); completes with whether anyone matched
+    private CompletableFuture<Boolean> notifyWishlistSubscribers(Book book) {
+        return wishlistService.findSubscribers(book.getName(), book.getAuthor(), book.getIsbn())
+                .thenApply(subscribers -> {
+                    String message = availabilityMessage(book);
+                    for (String userEmail : subscribers) {
+                        notificationService.sendNotification(userEmail, message);
+                    }
+                    return !subscribers.isEmpty();
+                });
+    }
+
+    static String availabilityMessage(Book book) {
+        return "The book \"" + book.getName() + "\" by " + book.getAuthor() + " is now available!";
+    }
+
+    public CompletableFuture<List<Book>> getBooksByRole(String role, String userEmail) {
+        return catalogIndex.whenReady()
+                .thenApply(unused -> catalogIndex.booksForRole(role, userEmail));
+    }
+
     public CompletableFuture<Void> deleteBook(String userEmail, String bookId) {
         CompletableFuture<Void> future = new CompletableFuture<>();
         String sanitizedEmail = sanitizeEmail(userEmail);
@@ -254,7 +387,13 @@ public BookService(ImageUploadService imageUploadService, FirebaseApp firebaseAp
                 Book book = snapshot.getValue(Book.class);
 
                 if (book != null && sanitizedEmail.equals(sanitizeEmail(book.getUserEmail()))) {
-                    databaseReference.child(bookId).removeValueAsync();
+                    Map<String, Object> updates = new HashMap<>();
+                    updates.put("books/" + bookId, null);
+                    // Lets instances starting from a catalog snapshot see the deletion
+                    updates.put("bookTombstones/" + bookId, System.currentTimeMillis());
+                    // The key may already belong to a newer listing of the same book, so it goes separately
+                    toCompletable(rootReference.updateChildrenAsync(updates))
+                            .thenRun(() -> releaseListingKey(listingKey(book), bookId));
                     future.complete(null);
                 } else {
                     future.completeExceptionally(new RuntimeException("Book not found or unauthorized access."));
@@ -270,77 +409,185 @@ public BookService(ImageUploadService imageUploadService, FirebaseApp firebaseAp
         return future;
     }
     public CompletableFuture<List<Book>> searchBooks(String query, String userEmail) {
-        CompletableFuture<List<Book>> future = new CompletableFuture<>();
-        
-        // Log the incoming search parameters
-        System.out.println("Searching for: '" + query + "', userEmail: " + (userEmail != null ? userEmail : "null"));
-        
-        databaseReference.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                List<Book> matchedBooks = new ArrayList<>();
-                String lowerQuery = query.toLowerCase().trim();
-                
-                System.out.println("Total books in database: " + snapshot.getChildrenCount());
-                
-                for (DataSnapshot bookSnapshot : snapshot.getChildren()) {
-                    Book book = bookSnapshot.getValue(Book.class);
-                    
-                    if (book != null) {
-                        // Check if book matches the search query
-                        boolean matchesQuery = 
-                            (book.getName() != null && book.getName().toLowerCase().contains(lowerQuery)) ||
-                            (book.getAuthor() != null && book.getAuthor().toLowerCase().contains(lowerQuery)) ||
-                            (book.getGenre() != null && book.getGenre().toLowerCase().contains(lowerQuery));
-                        
-                        // Only filter by user if userEmail is provided
-                        boolean shouldIncludeBasedOnUser = true;
-                        if (userEmail != null && !userEmail.isEmpty()) {
-                            String sanitizedUserEmail = sanitizeEmail(userEmail).toLowerCase();
-                            String bookUserEmail = book.getUserEmail() != null ? 
-                                sanitizeEmail(book.getUserEmail()).toLowerCase() : "";
-                            shouldIncludeBasedOnUser = bookUserEmail.equals(sanitizedUserEmail);
-                        }
-                        
-                        // For buyer view, we only want available or donatable books
-                        boolean isAvailableForBuyer = 
-                            book.getStatus() != null && 
-                            (book.getStatus().equalsIgnoreCase("available") || 
-                             book.getStatus().equalsIgnoreCase("donatable"));
-                        
-                        // Check if the book should be included in results
-                        if (matchesQuery && (userEmail == null || shouldIncludeBasedOnUser) && isAvailableForBuyer) {
-                            matchedBooks.add(book);
-                            System.out.println("Found matching book: " + book.getName());
-                        }
-                    }
+        return catalogIndex.whenReady().thenApply(unused -> {
+            // Unpaged search answers with the best MAX_SEARCH_RESULTS; searchBooksPage walks further
+            return searchIndex.search(query, searchFilter(userEmail), MAX_SEARCH_RESULTS);
+        });
+    }
+
+    // Typo-tolerant variant of searchBooks over names and authors, closest matches first
+    public CompletableFuture<List<Book>> searchBooksFuzzy(String query, String userEmail) {
+        return catalogIndex.whenReady().thenApply(unused -> {
+            List<Book> matchedBooks = new ArrayList<>();
+            Predicate<Book> filter = searchFilter(userEmail);
+
+            for (Book book : fuzzyIndex.search(query)) {
+                if (filter.test(book)) {
+                    matchedBooks.add(book);
                 }
-                
-                System.out.println("Search complete. Found " + matchedBooks.size() + " matching books.");
-                future.complete(matchedBooks);
             }
-            
-            @Override
-            public void onCancelled(DatabaseError error) {
-                System.err.println("Search error: " + error.getMessage());
-                future.completeExceptionally(error.toException());
+
+            return matchedBooks;
+        });
+    }
+
+    public CompletableFuture<BookPage> getBooksByRolePage(String role, String userEmail, String cursor, int limit) {
+        int pageSize = clampPageSize(limit);
+        String afterBookId = cursor != null ? decodeCursor(cursor) : null;
+
+        return catalogIndex.whenReady().thenApply(unused -> {
+            List<Book> books = catalogIndex.pageForRole(role, userEmail, afterBookId, pageSize);
+            String nextCursor = books.size() == pageSize
+                    ? encodeCursor(books.get(books.size() - 1).getBookId())
+                    : null;
+            return new BookPage(books, nextCursor);
+        });
+    }
+
+    public CompletableFuture<BookPage> searchBooksPage(String query, String userEmail, String cursor, int limit) {
+        int pageSize = clampPageSize(limit);
+        Double afterScore = null;
+        String afterBookId = null;
+        if (cursor != null) {
+            String[] position = decodeCursor(cursor).split("\\|", 2);
+            if (position.length != 2) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            try {
+                afterScore = Double.parseDouble(position[0]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor");
             }
+            afterBookId = position[1];
+        }
+        Double scoreCursor = afterScore;
+        String idCursor = afterBookId;
+
+        return catalogIndex.whenReady().thenApply(unused -> {
+            List<BookSearchIndex.Hit> hits =
+                    searchIndex.searchPage(query, searchFilter(userEmail), scoreCursor, idCursor, pageSize);
+            List<Book> books = new ArrayList<>(hits.size());
+            for (BookSearchIndex.Hit hit : hits) {
+                books.add(hit.getBook());
+            }
+            String nextCursor = null;
+            if (hits.size() == pageSize) {
+                BookSearchIndex.Hit last = hits.get(hits.size() - 1);
+                nextCursor = encodeCursor(last.getScore() + "|" + last.getBook().getBookId());
+            }
+            return new BookPage(books, nextCursor);
+        });
+    }
+
+    /**
+     * A page of the role's listing in a server-side sort order ("newest", "price_asc", "price_desc"
+     * or "quantity"), read from the sorted partitions without sorting the catalog.
+     */
+    public CompletableFuture<BookPage> getSortedBooksPage(String role, String userEmail, String sort, String cursor,
+                                                          int limit) {
+        int pageSize = clampPageSize(limit);
+        BookSortIndex.SortOrder order;
+        try {
+            order = BookSortIndex.SortOrder.parse(sort);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown sort: " + sort);
+        }
+        BookSortIndex.Entry after = null;
+        if (cursor != null) {
+            String[] position = decodeCursor(cursor).split("\\|", 2);
+            try {
+                after = new BookSortIndex.Entry(Double.parseDouble(position[0]), position[1]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+        BookSortIndex.Entry afterEntry = after;
+
+        return catalogIndex.whenReady().thenApply(unused -> {
+            List<BookSortIndex.Entry> entries = sortIndex.page(role, userEmail, order, afterEntry, pageSize);
+            List<Book> books = new ArrayList<>(entries.size());
+            for (BookSortIndex.Entry entry : entries) {
+                Book book = sortIndex.resolve(entry);
+                if (book != null) {
+                    books.add(book);
+                }
+            }
+            String nextCursor = null;
+            if (entries.size() == pageSize) {
+                BookSortIndex.Entry last = entries.get(entries.size() - 1);
+                nextCursor = encodeCursor(last.getValue() + "|" + last.getBookId());
+            }
+            return new BookPage(books, nextCursor);
         });
-        
-        return future;
     }
-    
-    
 
+    // Search results are limited to books a buyer can take, optionally owned by the given user
+    private Predicate<Book> searchFilter(String userEmail) {
+        String sanitizedUserEmail = userEmail != null ? sanitizeEmail(userEmail).toLowerCase() : null;
+
+        return book -> {
+            // Only filter by user if userEmail is provided
+            boolean shouldIncludeBasedOnUser = true;
+            if (sanitizedUserEmail != null && !sanitizedUserEmail.isEmpty()) {
+                String bookUserEmail = book.getUserEmail() != null ?
+                    sanitizeEmail(book.getUserEmail()).toLowerCase() : "";
+                shouldIncludeBasedOnUser = bookUserEmail.equals(sanitizedUserEmail);
+            }
+
+            // For buyer view, we only want available or donatable books
+            boolean isAvailableForBuyer =
+                book.getStatus() != null &&
+                (book.getStatus().equalsIgnoreCase("available") ||
+                 book.getStatus().equalsIgnoreCase("donatable"));
+
+            return shouldIncludeBasedOnUser && isAvailableForBuyer;
+        };
+    }
+
+    private int clampPageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    private String encodeCursor(String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    /*
+     * Served from the resident catalog once it has caught up with Firebase. Until then, or for a book it
+     * does not hold, the book is read by key from Firebase through the cache.
+     */
     public CompletableFuture<Book> getBookById(String bookId) {
+        CompletableFuture<Void> caughtUp = catalogIndex.whenCaughtUp();
+        if (caughtUp.isDone() && !caughtUp.isCompletedExceptionally()) {
+            Book resident = catalogIndex.get(bookId);
+            if (resident != null) {
+                return CompletableFuture.completedFuture(resident);
+            }
+        }
+
+        Book cached = bookCache.get(bookId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(catalogIndex.withAvailability(cached));
+        }
+
+        Object loadToken = bookCache.beginLoad(bookId);
         CompletableFuture<Book> future = new CompletableFuture<>();
 
         databaseReference.child(bookId).addListenerForSingleValueEvent(new ValueEventListener() {
             @Override
             public void onDataChange(DataSnapshot snapshot) {
                 Book book = snapshot.getValue(Book.class);
+                bookCache.completeLoad(bookId, loadToken, book);
                 if (book != null) {
-                    future.complete(book);
+                    future.complete(catalogIndex.withAvailability(book));
                 } else {
                     future.completeExceptionally(new RuntimeException("Book not found"));
                 }
@@ -356,31 +603,81 @@ public BookService(ImageUploadService imageUploadService, FirebaseApp firebaseAp
     }
 
     public CompletableFuture<Void> updateBookStatus(String bookId, String userEmail, String newStatus) {
-        CompletableFuture<Void> future = new CompletableFuture<>();
-
-        // Check if book exists
-        databaseReference.child(bookId).addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                Book book = snapshot.getValue(Book.class);
+        return catalogIndex.whenCaughtUp().thenCompose(unused -> {
+            // Check if book exists and belongs to the user, as the batch path does
+            Book book = catalogIndex.get(bookId);
+            if (book == null || !sanitizeEmail(userEmail).equalsIgnoreCase(sanitizeEmail(book.getUserEmail()))) {
+                CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new RuntimeException("Book not found or unauthorized access."));
+                return failed;
+            }
 
-                if (book != null) {
-                    // Update status
-                    book.setStatus(newStatus);
-                    databaseReference.child(bookId).setValueAsync(book);
+            // Only status and updatedAt are written, so a concurrent quantity change is left intact
+            return toCompletable(databaseReference.child(bookId).updateChildrenAsync(statusUpdate(newStatus)))
+                    .thenRun(() -> publishStatusChange(book, newStatus));
+        });
+    }
 
-                    future.complete(null);
-                } else {
-                    future.completeExceptionally(new RuntimeException("Book not found or unauthorized access."));
+    /**
+     * Moves many of the user's books to a new status in one multi-path update. An empty id list means
+     * every book the user owns. Books the user does not own, or that do not exist, are skipped.
+     */
+    public CompletableFuture<Map<String, Object>> updateBookStatuses(String userEmail, List<String> bookIds,
+                                                                     String newStatus) {
+        return catalogIndex.whenCaughtUp().thenCompose(unused -> {
+            String sanitizedEmail = sanitizeEmail(userEmail);
+            List<Book> targets = new ArrayList<>();
+            List<String> skipped = new ArrayList<>();
+
+            if (bookIds == null || bookIds.isEmpty()) {
+                targets.addAll(catalogIndex.booksOwnedBy(userEmail));
+            } else {
+                for (String bookId : bookIds) {
+                    Book book = catalogIndex.get(bookId);
+                    if (book != null && sanitizedEmail.equalsIgnoreCase(sanitizeEmail(book.getUserEmail()))) {
+                        targets.add(book);
+                    } else {
+                        skipped.add(bookId);
+                    }
                 }
             }
 
-            @Override
-            public void onCancelled(DatabaseError error) {
-                future.completeExceptionally(error.toException());
+            Map<String, Object> updates = new HashMap<>();
+            for (Book book : targets) {
+                updates.put(book.getBookId() + "/status", newStatus);
+                updates.put(book.getBookId() + "/updatedAt", System.currentTimeMillis());
             }
+            CompletableFuture<Void> write = updates.isEmpty()
+                    ? CompletableFuture.completedFuture(null)
+                    : toCompletable(databaseReference.updateChildrenAsync(updates));
+
+            return write.thenApply(done -> {
+                for (Book book : targets) {
+                    publishStatusChange(book, newStatus);
+                }
+                Map<String, Object> result = new HashMap<>();
+                result.put("updated", targets.size());
+                result.put("skipped", skipped);
+                return result;
+            });
         });
+    }
 
-        return future;
+    // Status write that also stamps updatedAt for snapshot catch-up
+    private Map<String, Object> statusUpdate(String newStatus) {
+        Map<String, Object> update = new HashMap<>();
+        update.put("status", newStatus);
+        update.put("updatedAt", System.currentTimeMillis());
+        return update;
+    }
+
+    private void publishStatusChange(Book book, String newStatus) {
+        Book updated = new Book(book.getBookId(), book.getUserId(), book.getUserEmail(), book.getName(),
+                book.getAuthor(), book.getPrice(), book.getIsbn(), newStatus, book.getGenre(), book.getCondition(),
+                book.getDescription(), book.getImageUrl(), book.getQuantity());
+        updated.setCreatedAt(book.getCreatedAt());
+        updated.setUpdatedAt(System.currentTimeMillis());
+        eventPublisher.publishEvent(
+                new BookStatusChangedEvent(updated, book.getStatus(), newStatus, System.currentTimeMillis()));
     }
 }
@@ -0,0 +1,158 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Sorted views of every status and owner partition of the catalog (newest, cheapest, most expensive,
+ * most stocked), kept in skip lists and adjusted on each catalog change. A role page merges the heads
+ * of at most two partitions instead of sorting the catalog.
+ */
+@Service
+public class BookSortIndex implements BookCatalogIndex.CatalogListener {
+
+    public enum SortOrder {
+        NEWEST, PRICE_ASC, PRICE_DESC, QUANTITY;
+
+        public static SortOrder parse(String value) {
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    /** Position of a book in one sort order: its sort value, ties broken by bookId. */
+    public static class Entry {
+        private final double value;
+        private final String bookId;
+
+        public Entry(double value, String bookId) {
+            this.value = value;
+            this.bookId = bookId;
+        }
+
+        public double getValue() { return value; }
+
+        public String getBookId() { return bookId; }
+    }
+
+    private static final Comparator<Entry> ASCENDING = Comparator.comparingDouble(Entry::getValue)
+            .thenComparing(Entry::getBookId);
+    private static final Comparator<Entry> DESCENDING = Comparator.comparingDouble(Entry::getValue).reversed()
+            .thenComparing(Entry::getBookId);
+
+    // sort order -> partition ("status:<status>" or "owner:<owner key>") -> entries
+    private final Map<SortOrder, Map<String, NavigableSet<Entry>>> partitions = new EnumMap<>(SortOrder.class);
+    private final BookCatalogIndex catalogIndex;
+
+    public BookSortIndex(BookCatalogIndex catalogIndex) {
+        this.catalogIndex = catalogIndex;
+        for (SortOrder order : SortOrder.values()) {
+            partitions.put(order, new ConcurrentHashMap<>());
+        }
+        catalogIndex.addListener(this);
+    }
+
+    @Override
+    public void onBookUpserted(Book previous, Book current) {
+        if (previous != null) {
+            unlink(previous);
+        }
+        link(current);
+    }
+
+    @Override
+    public void onBookRemoved(Book previous) {
+        unlink(previous);
+    }
+
+    /**
+     * Up to limit books of the role's listing in the given order, starting after the cursor entry
+     * (null for the first page).
+     */
+    public List<Entry> page(String role, String userEmail, SortOrder order, Entry after, int limit) {
+        Comparator<Entry> comparator = comparator(order);
+        NavigableSet<Entry> merged = new TreeSet<>(comparator);
+
+        for (String partition : partitionsForRole(role, userEmail)) {
+            NavigableSet<Entry> entries = partitions.get(order).get(partition);
+            if (entries == null) {
+                continue;
+            }
+            Iterator<Entry> tail = after == null ? entries.iterator() : entries.tailSet(after, false).iterator();
+            for (int taken = 0; taken < limit && tail.hasNext(); taken++) {
+                merged.add(tail.next());
+            }
+        }
+
+        List<Entry> page = new ArrayList<>(limit);
+        for (Entry entry : merged) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(entry);
+        }
+        return page;
+    }
+
+    public Book resolve(Entry entry) {
+        return catalogIndex.get(entry.getBookId());
+    }
+
+    private List<String> partitionsForRole(String role, String userEmail) {
+        List<String> keys = new ArrayList<>();
+        if (BookCatalogIndex.isOwnerRole(role)) {
+            keys.add("owner:" + BookCatalogIndex.ownerKey(userEmail));
+        }
+        for (String status : BookCatalogIndex.statusesForRole(role)) {
+            keys.add("status:" + status);
+        }
+        return keys;
+    }
+
+    private void link(Book book) {
+        for (SortOrder order : SortOrder.values()) {
+            Entry entry = entry(book, order);
+            for (String partition : partitionsOf(book)) {
+                partitions.get(order)
+                        .computeIfAbsent(partition, k -> new ConcurrentSkipListSet<>(comparator(order)))
+                        .add(entry);
+            }
+        }
+    }
+
+    private void unlink(Book book) {
+        for (SortOrder order : SortOrder.values()) {
+            Entry entry = entry(book, order);
+            for (String partition : partitionsOf(book)) {
+                NavigableSet<Entry> entries = partitions.get(order).get(partition);
+                if (entries != null) {
+                    entries.remove(entry);
+                }
+            }
+        }
+    }
+
+    private List<String> partitionsOf(Book book) {
+        return List.of("status:" + BookCatalogIndex.normalize(book.getStatus()),
+                "owner:" + BookCatalogIndex.ownerKey(book.getUserEmail()));
+    }
+
+    static Entry entry(Book book, SortOrder order) {
+        switch (order) {
+            case NEWEST:
+                return new Entry(book.getCreatedAt(), book.getBookId());
+            case PRICE_ASC:
+            case PRICE_DESC:
+                return new Entry(book.getPrice() != null ? book.getPrice() : 0.0, book.getBookId());
+            default:
+                return new Entry(book.getQuantity(), book.getBookId());
+        }
+    }
+
+    static Comparator<Entry> comparator(SortOrder order) {
+        return order == SortOrder.PRICE_ASC ? ASCENDING : DESCENDING;
+    }
+}
@@ -1,21 +1,81 @@
 package com.example.demo.service;
 
+import com.example.demo.model.Book;
 import com.example.demo.model.CartItem;
+import com.example.demo.model.CartLine;
+import com.example.demo.model.CartView;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.database.*;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
+/**
+ * Carts live under carts/<email>/<bookId>, one entry per book, so every mutation is a transaction on a
+ * single entry rather than a scan of the whole cart. Carts written under the older random-id keys are
+ * merged into bookId keys once at startup.
+ *
+ * Adds and removes go through a per-user write-behind buffer: quantity deltas taken within
+ * cart.write-behind.window-ms are merged and written as one transaction, reads are served from the
+ * buffer while it is open, and whatever is still buffered is written out on shutdown.
+ */
 @Service
 public class CartService {
+    // Version of the carts key scheme; 2 keys entries by bookId
+    private static final int CART_KEY_VERSION = 2;
+    private static final long SHUTDOWN_FLUSH_SECONDS = 10;
+
+    /** One user's buffered cart: the stored cart plus changes, and the deltas not yet handed to a flush. */
+    private static final class PendingCart {
+        private final String userEmail;
+        private final String safeEmail;
+        private final Map<String, CartItem> view = new LinkedHashMap<>();
+        private final Map<String, Integer> deltas = new LinkedHashMap<>();
+        private CompletableFuture<Void> loaded;
+        private CompletableFuture<Void> flushing = CompletableFuture.completedFuture(null);
+        private ScheduledFuture<?> timer;
+        private boolean closed;
+
+        private PendingCart(String userEmail, String safeEmail) {
+            this.userEmail = userEmail;
+            this.safeEmail = safeEmail;
+        }
+    }
+
+    private final DatabaseReference rootRef;
     private final DatabaseReference cartRef;
+    private final BookService bookService;
+    private final StockReservationService reservations;
+    private final long windowMillis;
+    private final Map<String, PendingCart> pendingCarts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cart-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    public CartService(FirebaseApp firebaseApp) {
-        this.cartRef = FirebaseDatabase.getInstance(firebaseApp).getReference("carts");
+    public CartService(FirebaseApp firebaseApp, BookService bookService, StockReservationService reservations,
+                       @Value("${cart.write-behind.window-ms:500}") long windowMillis) {
+        this.rootRef = FirebaseDatabase.getInstance(firebaseApp).getReference();
+        this.cartRef = rootRef.child("carts");
+        this.bookService = bookService;
+        this.reservations = reservations;
+        this.windowMillis = windowMillis;
     }
 
     //  Helper method to sanitize email (Firebase path-safe)
@@ -23,94 +83,316 @@ public class CartService {
         return email.replace(".", ",");
     }
 
+    @PostConstruct
+    private void init() {
+        rootRef.child("indexVersions").child("carts").addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot versionSnapshot) {
+                Integer version = versionSnapshot.getValue(Integer.class);
+                if (version == null || version < CART_KEY_VERSION) {
+                    migrateCarts();
+                }
+            }
 
-    public CompletableFuture<Void> addToCart(String userEmail, String bookId, int quantity) {
-        CompletableFuture<Void> future = new CompletableFuture<>();
-        String safeEmail = sanitizeEmail(userEmail);
-    
-        cartRef.child(safeEmail).addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onCancelled(DatabaseError error) {
+                System.err.println("Cart migration check failed: " + error.getMessage());
+            }
+        });
+    }
+
+    // Re-keys every cart holding random-id entries, one transaction per user so concurrent adds are not lost
+    private void migrateCarts() {
+        cartRef.addListenerForSingleValueEvent(new ValueEventListener() {
             @Override
             public void onDataChange(DataSnapshot snapshot) {
-                boolean updated = false;
-    
-                for (DataSnapshot child : snapshot.getChildren()) {
-                    CartItem existingItem = child.getValue(CartItem.class);
-                    if (existingItem != null && bookId.equals(existingItem.getBookId())) {
-                        int updatedQuantity = existingItem.getQuantity() + quantity;
-                        child.getRef().child("quantity").setValueAsync(updatedQuantity);
-                        updated = true;
-                        break;
+                List<CompletableFuture<Void>> migrations = new ArrayList<>();
+                for (DataSnapshot userSnap : snapshot.getChildren()) {
+                    for (DataSnapshot child : userSnap.getChildren()) {
+                        CartItem item = child.getValue(CartItem.class);
+                        if (item != null && !child.getKey().equals(item.getBookId())) {
+                            migrations.add(migrateCart(userSnap.getKey()));
+                            break;
+                        }
                     }
                 }
-    
-                if (!updated) {
-                    String id = UUID.randomUUID().toString();
-                    CartItem newItem = new CartItem();
-                    newItem.setId(id);
-                    newItem.setUserEmail(userEmail);
-                    newItem.setBookId(bookId);
-                    newItem.setQuantity(quantity);
-                    newItem.setAddedAt(System.currentTimeMillis());
-                    cartRef.child(safeEmail).child(id).setValueAsync(newItem);
-                }
-    
-                future.complete(null);
-            }
-    
+                CompletableFuture.allOf(migrations.toArray(new CompletableFuture[0]))
+                        .thenRun(() -> rootRef.child("indexVersions").child("carts").setValueAsync(CART_KEY_VERSION))
+                        .exceptionally(e -> {
+                            System.err.println("Cart migration failed: " + e.getMessage());
+                            return null;
+                        });
+            }
+
             @Override
             public void onCancelled(DatabaseError error) {
-                future.completeExceptionally(error.toException());
+                System.err.println("Cart migration read failed: " + error.getMessage());
             }
         });
-    
-        return future;
     }
-    
-    public CompletableFuture<Void> removeFromCart(String userEmail, String bookId) {
+
+    private CompletableFuture<Void> migrateCart(String safeEmail) {
         CompletableFuture<Void> future = new CompletableFuture<>();
-        String safeEmail = sanitizeEmail(userEmail);
-    
-        cartRef.child(safeEmail).addListenerForSingleValueEvent(new ValueEventListener() {
+        cartRef.child(safeEmail).runTransaction(new Transaction.Handler() {
             @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                boolean found = false;
-    
-                for (DataSnapshot child : snapshot.getChildren()) {
+            public Transaction.Result doTransaction(MutableData currentData) {
+                Map<String, CartItem> byBook = new LinkedHashMap<>();
+                boolean rekeyed = false;
+                for (MutableData child : currentData.getChildren()) {
                     CartItem item = child.getValue(CartItem.class);
-                    if (item != null && bookId.equals(item.getBookId())) {
-                        int updatedQuantity = item.getQuantity() - 1;
-    
-                        if (updatedQuantity <= 0) {
-                            child.getRef().removeValueAsync(); // Remove if quantity is 0
-                        } else {
-                            child.getRef().child("quantity").setValueAsync(updatedQuantity); // Just decrement
-                        }
-    
-                        found = true;
-                        break;
+                    if (item == null || item.getBookId() == null) {
+                        continue;
+                    }
+                    rekeyed |= !child.getKey().equals(item.getBookId());
+                    CartItem merged = byBook.get(item.getBookId());
+                    if (merged == null) {
+                        item.setId(item.getBookId());
+                        byBook.put(item.getBookId(), item);
+                    } else {
+                        merged.setQuantity(merged.getQuantity() + item.getQuantity());
+                        merged.setAddedAt(Math.min(merged.getAddedAt(), item.getAddedAt()));
                     }
                 }
-    
-                if (found) {
-                    future.complete(null);
+                if (rekeyed) {
+                    currentData.setValue(byBook);
+                }
+                return Transaction.success(currentData);
+            }
+
+            @Override
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot snapshot) {
+                if (error != null) {
+                    future.completeExceptionally(error.toException());
                 } else {
-                    future.completeExceptionally(new RuntimeException("Item with bookId not found in cart."));
+                    future.complete(null);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Reserves the copies first, so a book nobody else can get any more is refused with an
+     * IllegalStateException, then adds the copies to the user's write-behind buffer.
+     */
+    public CompletableFuture<Void> addToCart(String userEmail, String bookId, int quantity) {
+        return reservations.reserve(userEmail, bookId, quantity)
+                .thenCompose(unused -> buffer(userEmail, bookId, quantity))
+                .whenComplete((unused, error) -> {
+                    if (error != null && !(unwrap(error) instanceof IllegalStateException)) {
+                        reservations.release(userEmail, bookId, quantity);
+                    }
+                });
+    }
+
+    // Takes one copy off the entry and drops it at zero
+    public CompletableFuture<Void> removeFromCart(String userEmail, String bookId) {
+        return buffer(userEmail, bookId, -1)
+                .thenRun(() -> reservations.release(userEmail, bookId, 1));
+    }
+
+    // Cart items for a user, including changes still waiting in the write-behind buffer
+    public CompletableFuture<List<CartItem>> getCart(String userEmail) {
+        PendingCart cart = pendingCarts.get(sanitizeEmail(userEmail));
+        if (cart == null) {
+            return readCart(userEmail);
+        }
+        return cart.loaded.thenCompose(unused -> {
+            synchronized (cart) {
+                if (cart.closed) {
+                    return getCart(userEmail);
+                }
+                List<CartItem> items = new ArrayList<>(cart.view.size());
+                for (CartItem item : cart.view.values()) {
+                    items.add(new CartItem(item.getId(), item.getUserEmail(), item.getBookId(), item.getQuantity(),
+                            item.getAddedAt()));
                 }
+                return CompletableFuture.completedFuture(items);
             }
-    
+        });
+    }
+
+    /** Writes out whatever the user's buffer holds; completes once it is stored. */
+    public CompletableFuture<Void> flush(String userEmail) {
+        PendingCart cart = pendingCarts.get(sanitizeEmail(userEmail));
+        return cart != null ? cart.loaded.thenCompose(unused -> flush(cart)) : CompletableFuture.completedFuture(null);
+    }
+
+    /** Drops purchased books from an open buffer, whose view would otherwise still show them. */
+    public void forgetPurchased(String userEmail, Collection<String> bookIds) {
+        PendingCart cart = pendingCarts.get(sanitizeEmail(userEmail));
+        if (cart == null) {
+            return;
+        }
+        synchronized (cart) {
+            for (String bookId : bookIds) {
+                cart.view.remove(bookId);
+                cart.deltas.remove(bookId);
+            }
+        }
+    }
+
+    /**
+     * Applies a quantity delta to the user's buffered cart. The first change opens the buffer with one
+     * read of the stored cart and starts the window; every change after that only touches memory until
+     * the window closes. Taking a copy off a book that is not in the cart fails as before.
+     */
+    private CompletableFuture<Void> buffer(String userEmail, String bookId, int delta) {
+        String safeEmail = sanitizeEmail(userEmail);
+        PendingCart cart = pendingCarts.computeIfAbsent(safeEmail, key -> open(userEmail, key));
+        return cart.loaded.thenCompose(unused -> {
+            synchronized (cart) {
+                if (!cart.closed) {
+                    CartItem item = cart.view.get(bookId);
+                    if (item == null && delta < 0) {
+                        closeIfIdle(cart); // a buffer this change opened would otherwise never be dropped
+                        throw new RuntimeException("Item with bookId not found in cart.");
+                    }
+                    if (item == null) {
+                        cart.view.put(bookId, new CartItem(bookId, userEmail, bookId, delta, System.currentTimeMillis()));
+                    } else if (item.getQuantity() + delta <= 0) {
+                        cart.view.remove(bookId);
+                    } else {
+                        item.setQuantity(item.getQuantity() + delta);
+                    }
+                    if (cart.deltas.merge(bookId, delta, Integer::sum) == 0) {
+                        cart.deltas.remove(bookId); // e.g. a + and a - inside one window
+                    }
+                    if (cart.timer == null) {
+                        cart.timer = flusher.schedule(() -> flush(cart), windowMillis, TimeUnit.MILLISECONDS);
+                    }
+                    return CompletableFuture.<Void>completedFuture(null);
+                }
+            }
+            return buffer(userEmail, bookId, delta); // the buffer was flushed and dropped meanwhile
+        });
+    }
+
+    private PendingCart open(String userEmail, String safeEmail) {
+        PendingCart cart = new PendingCart(userEmail, safeEmail);
+        cart.loaded = readCart(userEmail).thenAccept(items -> {
+            synchronized (cart) {
+                for (CartItem item : items) {
+                    if (item != null && item.getBookId() != null) {
+                        cart.view.put(item.getBookId(), item);
+                    }
+                }
+            }
+        });
+        cart.loaded.exceptionally(e -> {
+            pendingCarts.remove(safeEmail, cart); // let the next change try the read again
+            return null;
+        });
+        return cart;
+    }
+
+    /**
+     * Hands the buffered deltas to one transaction on carts/<email>, after any flush already running.
+     * A failed write puts its deltas back for the next window; the buffer is dropped once it is empty
+     * and nothing is in flight, so later reads go to Firebase again.
+     */
+    private CompletableFuture<Void> flush(PendingCart cart) {
+        CompletableFuture<Void> result;
+        synchronized (cart) {
+            if (cart.timer != null) {
+                cart.timer.cancel(false);
+                cart.timer = null;
+            }
+            if (!cart.deltas.isEmpty()) {
+                Map<String, Integer> batch = new LinkedHashMap<>(cart.deltas);
+                Map<String, Long> addedAt = new HashMap<>();
+                for (String bookId : batch.keySet()) {
+                    CartItem item = cart.view.get(bookId);
+                    addedAt.put(bookId, item != null ? item.getAddedAt() : System.currentTimeMillis());
+                }
+                cart.deltas.clear();
+                cart.flushing = cart.flushing
+                        .handle((unused, error) -> null)
+                        .thenCompose(unused -> writeDeltas(cart, batch, addedAt));
+            }
+            result = cart.flushing;
+        }
+        result.whenComplete((unused, error) -> {
+            synchronized (cart) {
+                if (cart.flushing == result) {
+                    closeIfIdle(cart);
+                }
+            }
+        });
+        return result;
+    }
+
+    // Drops a buffer with nothing left to write, so later reads and changes go to Firebase again
+    private void closeIfIdle(PendingCart cart) {
+        synchronized (cart) {
+            if (cart.deltas.isEmpty() && cart.timer == null && cart.flushing.isDone()) {
+                cart.closed = true;
+                pendingCarts.remove(cart.safeEmail, cart);
+            }
+        }
+    }
+
+    private CompletableFuture<Void> writeDeltas(PendingCart cart, Map<String, Integer> batch, Map<String, Long> addedAt) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        cartRef.child(cart.safeEmail).runTransaction(new Transaction.Handler() {
             @Override
-            public void onCancelled(DatabaseError error) {
+            public Transaction.Result doTransaction(MutableData currentData) {
+                // Against a null local cart this writes only the additions; Firebase retries with the stored cart
+                for (Map.Entry<String, Integer> delta : batch.entrySet()) {
+                    MutableData entry = currentData.child(delta.getKey());
+                    CartItem item = entry.getValue(CartItem.class);
+                    int quantity = (item != null ? item.getQuantity() : 0) + delta.getValue();
+                    if (quantity <= 0) {
+                        entry.setValue(null);
+                    } else if (item == null) {
+                        entry.setValue(new CartItem(delta.getKey(), cart.userEmail, delta.getKey(), quantity,
+                                addedAt.get(delta.getKey())));
+                    } else {
+                        item.setQuantity(quantity);
+                        entry.setValue(item);
+                    }
+                }
+                return Transaction.success(currentData);
+            }
+
+            @Override
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot snapshot) {
+                if (error == null) {
+                    future.complete(null);
+                    return;
+                }
+                System.err.println("Cart flush failed for " + cart.safeEmail + ": " + error.getMessage());
+                synchronized (cart) {
+                    for (Map.Entry<String, Integer> delta : batch.entrySet()) {
+                        cart.deltas.merge(delta.getKey(), delta.getValue(), Integer::sum);
+                    }
+                    if (cart.timer == null) {
+                        cart.timer = flusher.schedule(() -> flush(cart), windowMillis, TimeUnit.MILLISECONDS);
+                    }
+                }
                 future.completeExceptionally(error.toException());
             }
         });
-    
+
         return future;
     }
-    
 
+    @PreDestroy
+    private void flushAll() {
+        List<CompletableFuture<Void>> flushes = new ArrayList<>();
+        for (PendingCart cart : pendingCarts.values()) {
+            flushes.add(cart.loaded.thenCompose(unused -> flush(cart)));
+        }
+        try {
+            CompletableFuture.allOf(flushes.toArray(new CompletableFuture[0])).get(SHUTDOWN_FLUSH_SECONDS, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            System.err.println("Cart buffers not fully flushed on shutdown: " + e.getMessage());
+        }
+        flusher.shutdownNow();
+    }
 
-    // 📤 Get all cart items for a user
-    public CompletableFuture<List<CartItem>> getCart(String userEmail) {
+    private CompletableFuture<List<CartItem>> readCart(String userEmail) {
         CompletableFuture<List<CartItem>> future = new CompletableFuture<>();
         String safeEmail = sanitizeEmail(userEmail);
         cartRef.child(safeEmail).addListenerForSingleValueEvent(new ValueEventListener() {
@@ -132,5 +414,44 @@ public class CartService {
         return future;
     }
 
-    
+    /**
+     * The cart joined with its books in one response: each line carries the book, its price, line total
+     * and whether it can still be bought. Books are fetched in parallel through the book cache.
+     */
+    public CompletableFuture<CartView> getCartView(String userEmail) {
+        return getCart(userEmail).thenCompose(items -> {
+            List<CompletableFuture<CartLine>> lines = new ArrayList<>(items.size());
+            for (CartItem item : items) {
+                if (item == null || item.getBookId() == null) {
+                    continue;
+                }
+                lines.add(bookService.getBookById(item.getBookId())
+                        .handle((book, error) -> toLine(userEmail, item, error == null ? book : null)));
+            }
+            return CompletableFuture.allOf(lines.toArray(new CompletableFuture[0]))
+                    .thenApply(unused -> {
+                        List<CartLine> joined = new ArrayList<>(lines.size());
+                        for (CompletableFuture<CartLine> line : lines) {
+                            joined.add(line.join());
+                        }
+                        return new CartView(userEmail, joined);
+                    });
+        });
+    }
+
+    private CartLine toLine(String userEmail, CartItem item, Book book) {
+        if (book == null) {
+            return new CartLine(item, null, 0, false);
+        }
+        boolean onSale = BookCatalogIndex.statusesForRole("buyer")
+                .contains(BookCatalogIndex.normalize(book.getStatus()));
+        int availableQuantity = onSale
+                ? Math.max(0, book.getQuantity() - reservations.reservedByOthers(userEmail, item.getBookId()))
+                : 0;
+        return new CartLine(item, book, availableQuantity, availableQuantity >= item.getQuantity());
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
 }
@@ -0,0 +1,180 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot of the catalog on local disk, so a restart can serve from the last known state
+ * while Firebase is asked only for what changed since. Layout: magic, format version, the time the
+ * capture started, the record count, the records, and a CRC32 of everything before it. A file that
+ * fails any check is ignored and the catalog falls back to a full load.
+ */
+@Service
+public class CatalogSnapshotStore {
+
+    private static final int MAGIC = 0x424C4353; // "BLCS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+    private static final int CHECKSUM_BYTES = 8;
+
+    /** Books read from a snapshot and the time its capture started. */
+    public static class Snapshot {
+        private final long capturedAt;
+        private final List<Book> books;
+
+        Snapshot(long capturedAt, List<Book> books) {
+            this.capturedAt = capturedAt;
+            this.books = books;
+        }
+
+        public long getCapturedAt() { return capturedAt; }
+
+        public List<Book> getBooks() { return books; }
+    }
+
+    private final Path path;
+
+    public CatalogSnapshotStore(@Value("${books.snapshot.path:data/catalog.snapshot}") String path) {
+        this.path = Paths.get(path);
+    }
+
+    /** Reads the snapshot through a memory mapping; null when it is missing, outdated or corrupt. */
+    public Snapshot load() {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + CHECKSUM_BYTES || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            CRC32 crc = new CRC32();
+            ByteBuffer content = buffer.duplicate();
+            content.limit((int) size - CHECKSUM_BYTES);
+            crc.update(content);
+            if (buffer.getLong((int) size - CHECKSUM_BYTES) != crc.getValue()) {
+                System.err.println("Catalog snapshot checksum mismatch, ignoring " + path);
+                return null;
+            }
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            long capturedAt = buffer.getLong();
+            int count = buffer.getInt();
+            List<Book> books = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                books.add(readBook(buffer));
+            }
+            return new Snapshot(capturedAt, books);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Catalog snapshot unreadable, ignoring " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Writes the books to a temporary file and moves it over the previous snapshot. */
+    public void save(long capturedAt, Collection<Book> books) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new CheckedOutputStream(Files.newOutputStream(temporary), crc)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(capturedAt);
+            out.writeInt(books.size());
+            for (Book book : books) {
+                writeBook(out, book);
+            }
+            out.flush();
+            // The checksum covers every byte written so far and is not part of itself
+            long checksum = crc.getValue();
+            out.writeLong(checksum);
+        }
+        // The data must be on disk before the rename, or a crash could leave a renamed but empty file
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeBook(DataOutputStream out, Book book) throws IOException {
+        writeString(out, book.getBookId());
+        writeString(out, book.getUserId());
+        writeString(out, book.getUserEmail());
+        writeString(out, book.getName());
+        writeString(out, book.getAuthor());
+        writeString(out, book.getIsbn());
+        writeString(out, book.getStatus());
+        writeString(out, book.getGenre());
+        writeString(out, book.getCondition());
+        writeString(out, book.getDescription());
+        writeString(out, book.getImageUrl());
+        out.writeDouble(book.getPrice() != null ? book.getPrice() : Double.NaN);
+        out.writeInt(book.getQuantity());
+        out.writeLong(book.getCreatedAt());
+        out.writeLong(book.getUpdatedAt());
+    }
+
+    private Book readBook(ByteBuffer buffer) {
+        String bookId = readString(buffer);
+        String userId = readString(buffer);
+        String userEmail = readString(buffer);
+        String name = readString(buffer);
+        String author = readString(buffer);
+        String isbn = readString(buffer);
+        String status = readString(buffer);
+        String genre = readString(buffer);
+        String condition = readString(buffer);
+        String description = readString(buffer);
+        String imageUrl = readString(buffer);
+        double price = buffer.getDouble();
+        int quantity = buffer.getInt();
+
+        Book book = new Book(bookId, userId, userEmail, name, author, Double.isNaN(price) ? null : price, isbn,
+                status, genre, condition, description, imageUrl, quantity);
+        book.setCreatedAt(buffer.getLong());
+        book.setUpdatedAt(buffer.getLong());
+        return book;
+    }
+
+    // Length-prefixed UTF-8, with -1 for null
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,581 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.model.CartItem;
+import com.example.demo.model.Order;
+import com.example.demo.model.OrderItem;
+import com.example.demo.model.TransactionHistory;
+import com.google.api.core.ApiFuture;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Turns a cart into an Order. Stock is taken first by a transaction per book that aborts when the
+ * book is no longer on sale in the requested quantity, so concurrent buyers can never take the same
+ * copy. The rest of the purchase (the order, buyer and seller TransactionHistory rows and the cart
+ * entries) then goes out in one multi-path update.
+ *
+ * Retries are idempotent through the client's checkoutId: orders/<checkoutId> is claimed by a
+ * transaction before anything else, a retry of a placed order returns that order, and every row the
+ * commit writes has a deterministic key. Each attempt gets its own attemptId, which it must still hold
+ * on the Pending placeholder before it records stock, commits or releases the claim.
+ *
+ * Every copy taken leaves a hold at books/<bookId>/checkoutHolds/<attemptId>, written in the same
+ * transaction as the take, and the placeholder lists the books it holds before any take starts. Putting
+ * stock back only undoes a hold that is still there, so it is safe to repeat and a no-op once the commit
+ * (which clears the holds) has landed. A Pending claim whose lease is older than CLAIM_TIMEOUT_MILLIS is
+ * taken over, by a retry of the same user or by the periodic sweep, and its holds are put back. The
+ * commit renews the lease just before writing, so only a commit write slower than the timeout could
+ * race a takeover.
+ */
+@Service
+public class CheckoutService {
+
+    static final String SOLD_STATUS = "sold";
+    private static final String PENDING = "Pending";
+    private static final String PLACED = "Placed";
+    private static final long CLAIM_TIMEOUT_MILLIS = 2 * 60 * 1000;
+
+    private final DatabaseReference rootRef;
+    private final CartService cartService;
+    private final BookCatalogIndex catalogIndex;
+    private final StockReservationService reservations;
+    private final long sweepIntervalSeconds;
+    private ScheduledExecutorService sweeper;
+
+    public CheckoutService(FirebaseApp firebaseApp, CartService cartService, BookCatalogIndex catalogIndex,
+                           StockReservationService reservations,
+                           @Value("${checkout.sweep.interval-seconds:60}") long sweepIntervalSeconds) {
+        this.rootRef = FirebaseDatabase.getInstance(firebaseApp).getReference();
+        this.cartService = cartService;
+        this.catalogIndex = catalogIndex;
+        this.reservations = reservations;
+        this.sweepIntervalSeconds = sweepIntervalSeconds;
+    }
+
+    @PostConstruct
+    private void init() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkout-sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweepExpiredClaims, sweepIntervalSeconds, sweepIntervalSeconds,
+                TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    public CompletableFuture<Order> checkout(String userEmail, String checkoutId) {
+        String orderId = checkoutId != null ? checkoutId : UUID.randomUUID().toString();
+        if (!orderId.matches("[A-Za-z0-9_-]{8,64}")) {
+            throw new IllegalArgumentException("checkoutId must be 8-64 letters, digits, '-' or '_'");
+        }
+        String attemptId = UUID.randomUUID().toString();
+        // Holds this attempt is answerable for: its own and those of an expired attempt it took over
+        Map<String, Map<String, Integer>> holds = new ConcurrentHashMap<>();
+
+        return claimOrder(orderId, userEmail, attemptId, holds).thenCompose(existing -> {
+            if (existing != null) {
+                if (!PLACED.equals(existing.getStatus())) {
+                    throw new IllegalStateException("Checkout " + orderId + " is already in progress");
+                }
+                return CompletableFuture.completedFuture(existing);
+            }
+            return restoreHolds(holds)
+                    .thenCompose(unused -> catalogIndex.whenCaughtUp())
+                    .thenCompose(unused -> cartService.flush(userEmail))
+                    .thenCompose(unused -> cartService.getCart(userEmail))
+                    .thenCompose(items -> place(orderId, attemptId, userEmail, items, holds))
+                    .whenComplete((order, error) -> {
+                        if (error != null) {
+                            abandon(orderId, attemptId, holds);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Writes a Pending placeholder at orders/<orderId> unless an order is already there, or only an
+     * expired Pending claim of the same user, which is taken over along with its stock holds (added to
+     * holds). Completes with null when this call claimed the id, or with the order found there otherwise.
+     */
+    private CompletableFuture<Order> claimOrder(String orderId, String userEmail, String attemptId,
+                                                Map<String, Map<String, Integer>> holds) {
+        CompletableFuture<Order> future = new CompletableFuture<>();
+        boolean[] claimed = new boolean[1];
+        Order[] takenOver = new Order[1];
+
+        rootRef.child("orders").child(orderId).runTransaction(new Transaction.Handler() {
+            @Override
+            public Transaction.Result doTransaction(MutableData currentData) {
+                long now = System.currentTimeMillis();
+                Order current = currentData.getValue(Order.class);
+                boolean expired = current != null && isExpired(current, now)
+                        && userEmail.equalsIgnoreCase(current.getUserEmail());
+                claimed[0] = current == null || expired;
+                takenOver[0] = expired ? current : null;
+                if (!claimed[0]) {
+                    return Transaction.abort();
+                }
+                Order placeholder = new Order(orderId, userEmail, new ArrayList<>(), 0, now, PENDING);
+                placeholder.setAttemptId(attemptId);
+                placeholder.setStockHolds(expired ? current.getStockHolds() : null);
+                currentData.setValue(placeholder);
+                return Transaction.success(currentData);
+            }
+
+            @Override
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot snapshot) {
+                if (error != null) {
+                    future.completeExceptionally(error.toException());
+                    return;
+                }
+                Order existing = snapshot.getValue(Order.class);
+                if (!claimed[0] && existing != null && !userEmail.equalsIgnoreCase(existing.getUserEmail())) {
+                    future.completeExceptionally(new IllegalStateException("checkoutId belongs to another user"));
+                    return;
+                }
+                if (claimed[0] && takenOver[0] != null && takenOver[0].getStockHolds() != null) {
+                    holds.putAll(takenOver[0].getStockHolds());
+                }
+                future.complete(claimed[0] ? null : existing);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Runs fn on the placeholder only while this attempt still holds it: Pending with its attemptId.
+     * Completes with false, changing nothing, once the claim has been placed, released or taken over.
+     */
+    private CompletableFuture<Boolean> updateClaim(String orderId, String attemptId, Consumer<Order> fn) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        boolean[] held = new boolean[1];
+
+        rootRef.child("orders").child(orderId).runTransaction(new Transaction.Handler() {
+            @Override
+            public Transaction.Result doTransaction(MutableData currentData) {
+                Order current = currentData.getValue(Order.class);
+                held[0] = false;
+                if (current == null) {
+                    return Transaction.success(currentData); // retried if the server holds the order
+                }
+                if (!PENDING.equals(current.getStatus()) || !attemptId.equals(current.getAttemptId())) {
+                    return Transaction.abort();
+                }
+                held[0] = true;
+                fn.accept(current);
+                currentData.setValue(current);
+                return Transaction.success(currentData);
+            }
+
+            @Override
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot snapshot) {
+                if (error != null) {
+                    future.completeExceptionally(error.toException());
+                } else {
+                    future.complete(committed && held[0]);
+                }
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Removes the placeholder this attempt holds, and only that. Completes with null when it was removed,
+     * or with whatever is at orders/<orderId> otherwise (e.g. the order, when the commit did land).
+     */
+    private CompletableFuture<Order> releaseClaim(String orderId, String attemptId) {
+        CompletableFuture<Order> future = new CompletableFuture<>();
+        boolean[] released = new boolean[1];
+
+        rootRef.child("orders").child(orderId).runTransaction(new Transaction.Handler() {
+            @Override
+            public Transaction.Result doTransaction(MutableData currentData) {
+                Order current = currentData.getValue(Order.class);
+                released[0] = false;
+                if (current == null) {
+                    return Transaction.success(currentData); // retried if the server holds the order
+                }
+                if (!PENDING.equals(current.getStatus()) || !attemptId.equals(current.getAttemptId())) {
+                    return Transaction.abort();
+                }
+                released[0] = true;
+                currentData.setValue(null);
+                return Transaction.success(currentData);
+            }
+
+            @Override
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot snapshot) {
+                if (error != null) {
+                    System.err.println("Releasing checkout " + orderId + " failed: " + error.getMessage());
+                    future.completeExceptionally(error.toException());
+                } else {
+                    future.complete(committed && released[0] ? null : snapshot.getValue(Order.class));
+                }
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Puts back the holds and then drops the claim. When stock cannot be put back the claim is kept, so
+     * the sweep finds its holds once the lease runs out.
+     */
+    private CompletableFuture<Order> abandon(String orderId, String attemptId, Map<String, Map<String, Integer>> holds) {
+        return restoreHolds(holds)
+                .thenCompose(unused -> releaseClaim(orderId, attemptId))
+                .whenComplete((unused, error) -> {
+                    if (error != null) {
+                        System.err.println("Abandoning checkout " + orderId + " failed, left to the sweep: "
+                                + error.getMessage());
+                    }
+                });
+    }
+
+    /** Takes over every Pending claim whose lease has run out and puts its stock back. */
+    private void sweepExpiredClaims() {
+        rootRef.child("orders").orderByChild("status").equalTo(PENDING)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(DataSnapshot snapshot) {
+                        long now = System.currentTimeMillis();
+                        for (DataSnapshot child : snapshot.getChildren()) {
+                            Order order = child.getValue(Order.class);
+                            if (order != null && isExpired(order, now)) {
+                                sweep(child.getKey());
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void onCancelled(DatabaseError error) {
+                        System.err.println("Checkout sweep failed: " + error.getMessage());
+                    }
+                });
+    }
+
+    private void sweep(String orderId) {
+        String sweepId = UUID.randomUUID().toString();
+        Map<String, Map<String, Integer>> holds = new ConcurrentHashMap<>();
+        boolean[] takenOver = new boolean[1];
+
+        rootRef.child("orders").child(orderId).runTransaction(new Transaction.Handler() {
+            @Override
+            public Transaction.Result doTransaction(MutableData currentData) {
+                Order current = currentData.getValue(Order.class);
+                takenOver[0] = false;
+                if (current == null) {
+                    return Transaction.success(currentData); // retried if the server holds the order
+                }
+                long now = System.currentTimeMillis();
+                if (!isExpired(current, now)) {
+                    return Transaction.abort();
+                }
+                takenOver[0] = true;
+                holds.clear();
+                if (current.getStockHolds() != null) {
+                    holds.putAll(current.getStockHolds());
+                }
+                current.setAttemptId(sweepId);
+                current.setOrderTimestamp(now);
+                currentData.setValue(current);
+                return Transaction.success(currentData);
+            }
+
+            @Override
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot snapshot) {
+                if (error != null) {
+                    System.err.println("Sweeping checkout " + orderId + " failed: " + error.getMessage());
+                } else if (committed && takenOver[0]) {
+                    abandon(orderId, sweepId, holds);
+                }
+            }
+        });
+    }
+
+    private CompletableFuture<Order> place(String orderId, String attemptId, String userEmail, List<CartItem> items,
+                                           Map<String, Map<String, Integer>> holds) {
+        List<Book> books = new ArrayList<>();
+        List<CartItem> lines = new ArrayList<>();
+        List<String> unavailable = new ArrayList<>();
+
+        for (CartItem item : items) {
+            if (item == null || item.getBookId() == null || item.getQuantity() <= 0) {
+                continue;
+            }
+            Book book = catalogIndex.get(item.getBookId());
+            // Copies held in other carts are not for sale to this buyer, but the buyer's own hold is
+            if (book == null || !isOnSale(book)
+                    || book.getQuantity() - reservations.reservedByOthers(userEmail, item.getBookId())
+                    < item.getQuantity()) {
+                unavailable.add(item.getBookId());
+                continue;
+            }
+            books.add(book);
+            lines.add(item);
+        }
+        if (!unavailable.isEmpty()) {
+            return failed(new IllegalStateException("Not available in the requested quantity: "
+                    + String.join(", ", unavailable)));
+        }
+        if (lines.isEmpty()) {
+            return failed(new IllegalStateException("Cart is empty"));
+        }
+
+        // The placeholder lists the books before any copy is taken, so a crash mid-way leaves nothing unlisted
+        Map<String, Integer> own = new HashMap<>();
+        for (CartItem item : lines) {
+            own.put(item.getBookId(), item.getQuantity());
+        }
+        return updateClaim(orderId, attemptId, placeholder -> {
+                    Map<String, Map<String, Integer>> recorded = placeholder.getStockHolds() != null
+                            ? placeholder.getStockHolds() : new HashMap<>();
+                    recorded.put(attemptId, own);
+                    placeholder.setStockHolds(recorded);
+                })
+                .thenCompose(held -> {
+                    if (!held) {
+                        return failed(new IllegalStateException("Checkout " + orderId + " was taken over"));
+                    }
+                    holds.put(attemptId, own);
+                    List<CompletableFuture<Boolean>> takes = new ArrayList<>(lines.size());
+                    for (CartItem item : lines) {
+                        takes.add(takeStock(item.getBookId(), attemptId, item.getQuantity()));
+                    }
+                    return CompletableFuture.allOf(takes.toArray(new CompletableFuture[0]))
+                            .handle((unused, error) -> takes);
+                })
+                .thenCompose(done -> {
+                    for (int i = 0; i < done.size(); i++) {
+                        CompletableFuture<Boolean> take = done.get(i);
+                        if (take.isCompletedExceptionally() || !take.join()) {
+                            unavailable.add(lines.get(i).getBookId());
+                        }
+                    }
+                    if (!unavailable.isEmpty()) {
+                        return failed(new IllegalStateException("Not available in the requested quantity: "
+                                + String.join(", ", unavailable)));
+                    }
+                    return commit(orderId, attemptId, userEmail, books, lines, own);
+                });
+    }
+
+    private CompletableFuture<Order> commit(String orderId, String attemptId, String userEmail, List<Book> books,
+                                            List<CartItem> lines, Map<String, Integer> own) {
+        String buyerKey = sanitizeEmail(userEmail);
+        long now = System.currentTimeMillis();
+        List<OrderItem> orderItems = new ArrayList<>();
+        List<String> purchasedBookIds = new ArrayList<>();
+        Map<String, Object> updates = new HashMap<>();
+        double total = 0;
+
+        for (int i = 0; i < books.size(); i++) {
+            Book book = books.get(i);
+            int quantity = lines.get(i).getQuantity();
+            double price = book.getPrice() != null ? book.getPrice() : 0.0;
+            OrderItem orderItem = new OrderItem(book.getBookId(), book.getName(), quantity, price);
+            orderItems.add(orderItem);
+            total += orderItem.getTotalPrice();
+            purchasedBookIds.add(book.getBookId());
+
+            TransactionHistory purchase = history(orderId, book, userEmail, "purchased", book.getUserEmail(), now);
+            TransactionHistory sale = history(orderId, book, book.getUserEmail(), SOLD_STATUS, userEmail, now);
+            updates.put("transactionHistory/" + buyerKey + "/" + purchase.getId(), purchase.toMap());
+            updates.put("transactionHistory/" + sanitizeEmail(book.getUserEmail()) + "/" + sale.getId(), sale.toMap());
+            updates.put("carts/" + buyerKey + "/" + book.getBookId(), null);
+            updates.put("books/" + book.getBookId() + "/checkoutHolds/" + attemptId, null);
+        }
+
+        Order order = new Order(orderId, userEmail, orderItems, total, now, PLACED);
+        updates.put("orders/" + orderId, order);
+
+        // Renewing the lease fences out a takeover for the length of the write
+        return updateClaim(orderId, attemptId, placeholder -> placeholder.setOrderTimestamp(System.currentTimeMillis()))
+                .thenCompose(held -> {
+                    if (!held) {
+                        return failed(new IllegalStateException("Checkout " + orderId + " was taken over"));
+                    }
+                    return toCompletable(rootRef.updateChildrenAsync(updates))
+                            .handle((unused, error) -> error)
+                            .thenCompose(error -> {
+                                if (error == null) {
+                                    return CompletableFuture.completedFuture(order);
+                                }
+                                // The write may have landed with only its ack lost; putting the stock back
+                                // is then a no-op and the order is found in place of the claim
+                                return abandon(orderId, attemptId, Collections.singletonMap(attemptId, own))
+                                        .thenApply(found -> {
+                                            if (found != null && PLACED.equals(found.getStatus())) {
+                                                return found;
+                                            }
+                                            throw new CompletionException(error);
+                                        });
+                            });
+                })
+                .thenApply(placed -> {
+                    cartService.forgetPurchased(userEmail, purchasedBookIds);
+                    for (String bookId : purchasedBookIds) {
+                        reservations.releaseAll(userEmail, bookId);
+                    }
+                    return placed;
+                });
+    }
+
+    /**
+     * Takes quantity copies of the book if it is on sale with that many left, marking it sold when the
+     * last copy goes, and leaves a hold for the attempt. Completes with false when the book could not
+     * supply it.
+     */
+    private CompletableFuture<Boolean> takeStock(String bookId, String attemptId, int quantity) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        rootRef.child("books").child(bookId).runTransaction(new Transaction.Handler() {
+            @Override
+            public Transaction.Result doTransaction(MutableData currentData) {
+                Book book = currentData.getValue(Book.class);
+                if (book == null) {
+                    return Transaction.success(currentData); // retried if the server holds the book
+                }
+                if (!isOnSale(book) || book.getQuantity() < quantity) {
+                    return Transaction.abort();
+                }
+                boolean soldOut = book.getQuantity() == quantity;
+                currentData.child("quantity").setValue(book.getQuantity() - quantity);
+                if (soldOut) {
+                    currentData.child("status").setValue(SOLD_STATUS);
+                }
+                currentData.child("updatedAt").setValue(System.currentTimeMillis());
+                Map<String, Object> hold = new HashMap<>();
+                hold.put("quantity", quantity);
+                hold.put("previousStatus", book.getStatus());
+                hold.put("markedSold", soldOut);
+                currentData.child("checkoutHolds").child(attemptId).setValue(hold);
+                return Transaction.success(currentData);
+            }
+
+            @Override
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot snapshot) {
+                if (error != null) {
+                    future.completeExceptionally(error.toException());
+                } else {
+                    future.complete(committed && snapshot.exists());
+                }
+            }
+        });
+
+        return future;
+    }
+
+    private CompletableFuture<Void> restoreHolds(Map<String, Map<String, Integer>> holds) {
+        List<CompletableFuture<Void>> restores = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Integer>> attempt : holds.entrySet()) {
+            for (String bookId : attempt.getValue().keySet()) {
+                restores.add(restoreHold(bookId, attempt.getKey()));
+            }
+        }
+        return CompletableFuture.allOf(restores.toArray(new CompletableFuture[0]));
+    }
+
+    // Undoes the attempt's hold on the book if it is still there; a hold already undone or committed is left
+    private CompletableFuture<Void> restoreHold(String bookId, String attemptId) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        rootRef.child("books").child(bookId).runTransaction(new Transaction.Handler() {
+            @Override
+            public Transaction.Result doTransaction(MutableData currentData) {
+                Book book = currentData.getValue(Book.class);
+                if (book == null) {
+                    return Transaction.success(currentData);
+                }
+                MutableData hold = currentData.child("checkoutHolds").child(attemptId);
+                Integer quantity = hold.child("quantity").getValue(Integer.class);
+                if (quantity == null) {
+                    return Transaction.abort();
+                }
+                currentData.child("quantity").setValue(book.getQuantity() + quantity);
+                if (Boolean.TRUE.equals(hold.child("markedSold").getValue(Boolean.class))
+                        && SOLD_STATUS.equals(book.getStatus())) {
+                    currentData.child("status").setValue(hold.child("previousStatus").getValue(String.class));
+                }
+                currentData.child("updatedAt").setValue(System.currentTimeMillis());
+                hold.setValue(null);
+                return Transaction.success(currentData);
+            }
+
+            @Override
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot snapshot) {
+                if (error != null) {
+                    System.err.println("Returning stock to " + bookId + " failed: " + error.getMessage());
+                    future.completeExceptionally(error.toException());
+                } else {
+                    future.complete(null);
+                }
+            }
+        });
+
+        return future;
+    }
+
+    private static boolean isExpired(Order order, long now) {
+        return PENDING.equals(order.getStatus()) && order.getOrderTimestamp() < now - CLAIM_TIMEOUT_MILLIS;
+    }
+
+    private TransactionHistory history(String orderId, Book book, String userEmail, String status,
+                                       String otherPartyEmail, long now) {
+        TransactionHistory entry = new TransactionHistory(book.getBookId(), book.getName(), book.getImageUrl(),
+                userEmail, status, otherPartyEmail);
+        entry.setId(orderId + "-" + book.getBookId() + "-" + status);
+        entry.setTransactionDate(new Date(now));
+        return entry;
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    private boolean isOnSale(Book book) {
+        return BookCatalogIndex.statusesForRole("buyer").contains(BookCatalogIndex.normalize(book.getStatus()));
+    }
+
+    private CompletableFuture<Void> toCompletable(ApiFuture<Void> write) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        write.addListener(() -> {
+            try {
+                write.get();
+                future.complete(null);
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }, Runnable::run);
+        return future;
+    }
+
+    private String sanitizeEmail(String email) {
+        return email.replace(".", ",");
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Memory-lean resident form of a Book. Status, genre and condition are dictionary codes, authors and
+ * owner emails are interned, price and quantity are primitives (a missing price is NaN) and the
+ * description is kept as UTF-8 bytes until a Book is materialized. toBook() gives back an equal Book.
+ */
+final class CompactBook {
+
+    static final int NONE = -1;
+
+    /** Shared dictionaries and intern table; one per catalog. */
+    static final class Encoder {
+        private final Dictionary statuses = new Dictionary();
+        private final Dictionary genres = new Dictionary();
+        private final Dictionary conditions = new Dictionary();
+        // Authors and owner emails repeat across listings; deleted values are not reclaimed
+        private final Map<String, String> interned = new ConcurrentHashMap<>();
+
+        CompactBook encode(Book book) {
+            return new CompactBook(this, book);
+        }
+
+        private String intern(String value) {
+            if (value == null) {
+                return null;
+            }
+            String existing = interned.putIfAbsent(value, value);
+            return existing != null ? existing : value;
+        }
+
+        /** Estimated heap held by the dictionaries and intern table, counted once for the whole catalog. */
+        long estimateBytes() {
+            long bytes = statuses.estimateBytes() + genres.estimateBytes() + conditions.estimateBytes();
+            for (String value : interned.keySet()) {
+                bytes += 32 + BookCache.stringBytes(value); // map node plus the shared string
+            }
+            return bytes;
+        }
+    }
+
+    /** Append-only code table; codes are indexes into the value list. */
+    static final class Dictionary {
+        private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+        private final List<String> values = new CopyOnWriteArrayList<>();
+
+        int encode(String value) {
+            if (value == null) {
+                return NONE;
+            }
+            Integer code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+            synchronized (this) {
+                return codes.computeIfAbsent(value, k -> {
+                    values.add(k);
+                    return values.size() - 1;
+                });
+            }
+        }
+
+        String decode(int code) {
+            return code == NONE ? null : values.get(code);
+        }
+
+        /** Code of an already known value, or NONE without adding it. */
+        int lookup(String value) {
+            Integer code = value != null ? codes.get(value) : null;
+            return code != null ? code : NONE;
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        long estimateBytes() {
+            long bytes = 0;
+            for (String value : values) {
+                bytes += 48 + BookCache.stringBytes(value); // map node, boxed code, list slot and the string
+            }
+            return bytes;
+        }
+    }
+
+    private final Encoder encoder;
+    private final String bookId;
+    private final String userId;
+    private final String userEmail;
+    private final String name;
+    private final String author;
+    private final String isbn;
+    private final String imageUrl;
+    private final byte[] description;
+    private final double price;
+    private final int quantity;
+    private final long createdAt;
+    private final long updatedAt;
+    private final int status;
+    private final int genre;
+    private final int condition;
+
+    private CompactBook(Encoder encoder, Book book) {
+        this.encoder = encoder;
+        this.bookId = book.getBookId();
+        this.userId = book.getUserId();
+        this.userEmail = encoder.intern(book.getUserEmail());
+        this.name = book.getName();
+        this.author = encoder.intern(book.getAuthor());
+        this.isbn = book.getIsbn();
+        this.imageUrl = book.getImageUrl();
+        this.description = book.getDescription() != null
+                ? book.getDescription().getBytes(StandardCharsets.UTF_8)
+                : null;
+        this.price = book.getPrice() != null ? book.getPrice() : Double.NaN;
+        this.quantity = book.getQuantity();
+        this.createdAt = book.getCreatedAt();
+        this.updatedAt = book.getUpdatedAt();
+        this.status = encoder.statuses.encode(book.getStatus());
+        this.genre = encoder.genres.encode(book.getGenre());
+        this.condition = encoder.conditions.encode(book.getCondition());
+    }
+
+    Book toBook() {
+        Book book = new Book(bookId, userId, userEmail, name, author, Double.isNaN(price) ? null : price, isbn,
+                encoder.statuses.decode(status), encoder.genres.decode(genre), encoder.conditions.decode(condition),
+                description != null ? new String(description, StandardCharsets.UTF_8) : null, imageUrl, quantity);
+        book.setCreatedAt(createdAt);
+        book.setUpdatedAt(updatedAt);
+        return book;
+    }
+
+    String getBookId() { return bookId; }
+
+    String getStatus() { return encoder.statuses.decode(status); }
+
+    String getUserEmail() { return userEmail; }
+
+    /**
+     * Estimated heap of this record, excluding the shared dictionary and interned values, under the
+     * same object and string model as BookCache.estimateBytes so the two can be compared.
+     */
+    long estimateBytes() {
+        long bytes = 88; // header, nine references, the double, the int, two longs and three int codes
+        bytes += BookCache.stringBytes(bookId) + BookCache.stringBytes(userId) + BookCache.stringBytes(name)
+                + BookCache.stringBytes(isbn) + BookCache.stringBytes(imageUrl);
+        if (description != null) {
+            bytes += BookCache.arrayBytes(description.length);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hierarchical timing wheel for in-process expiries: LEVELS wheels of SLOTS buckets, where a bucket on
+ * level L spans SLOTS^L ticks. A timeout is filed on the lowest level whose range covers its delay and
+ * is moved down a level each time its bucket comes round, so scheduling and cancelling are O(1) and each
+ * tick touches only the buckets that are due. Tasks run on the ticker thread and should be short.
+ */
+final class HierarchicalTimingWheel {
+
+    private static final int SLOTS = 64;
+    private static final int LEVELS = 4;
+
+    /** A scheduled task; cancelling it leaves it in its bucket to be dropped when the bucket is reached. */
+    static final class Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final long tickMillis;
+    private final long startMillis;
+    private final long[] spans = new long[LEVELS + 1];
+    private final List<List<Timeout>> buckets = new ArrayList<>(LEVELS * SLOTS);
+    private final ScheduledExecutorService ticker;
+    private long currentTick;
+
+    HierarchicalTimingWheel(String name, long tickMillis) {
+        this.tickMillis = tickMillis;
+        this.startMillis = System.currentTimeMillis();
+        spans[0] = 1;
+        for (int level = 1; level <= LEVELS; level++) {
+            spans[level] = spans[level - 1] * SLOTS;
+        }
+        for (int i = 0; i < LEVELS * SLOTS; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    Timeout schedule(long delayMillis, Runnable task) {
+        long delayTicks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+        synchronized (this) {
+            Timeout timeout = new Timeout(task, currentTick + delayTicks);
+            file(timeout);
+            return timeout;
+        }
+    }
+
+    void stop() {
+        ticker.shutdownNow();
+    }
+
+    // Catches up on every tick due by the wall clock, so a delayed ticker does not stretch the timeouts
+    private void advance() {
+        long dueTick = (System.currentTimeMillis() - startMillis) / tickMillis;
+        List<Timeout> expired = new ArrayList<>();
+        synchronized (this) {
+            while (currentTick < dueTick) {
+                currentTick++;
+                for (int level = LEVELS - 1; level >= 1; level--) {
+                    if (currentTick % spans[level] == 0) {
+                        List<Timeout> cascading = bucket(level, currentTick);
+                        List<Timeout> moving = new ArrayList<>(cascading);
+                        cascading.clear();
+                        for (Timeout timeout : moving) {
+                            if (timeout.deadlineTick <= currentTick) {
+                                expired.add(timeout);
+                            } else if (!timeout.cancelled) {
+                                file(timeout);
+                            }
+                        }
+                    }
+                }
+                List<Timeout> due = bucket(0, currentTick);
+                expired.addAll(due);
+                due.clear();
+            }
+        }
+        for (Timeout timeout : expired) {
+            if (!timeout.cancelled) {
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Timer task failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /*
+     * A level-L bucket is emptied when currentTick reaches its first tick, so a timeout goes on the lowest
+     * level where its bucket lies 1 to SLOTS-1 buckets ahead of the current one. Deadlines beyond the top
+     * level's range wait in its furthest bucket and are filed again from there.
+     */
+    private void file(Timeout timeout) {
+        int level = 0;
+        while (level < LEVELS - 1
+                && timeout.deadlineTick / spans[level] - currentTick / spans[level] >= SLOTS) {
+            level++;
+        }
+        long tick = timeout.deadlineTick;
+        if (tick / spans[level] - currentTick / spans[level] >= SLOTS) {
+            tick = (currentTick / spans[level] + SLOTS - 1) * spans[level];
+        }
+        bucket(level, tick).add(timeout);
+    }
+
+    private List<Timeout> bucket(int level, long tick) {
+        return buckets.get(level * SLOTS + (int) ((tick / spans[level]) % SLOTS));
+    }
+}
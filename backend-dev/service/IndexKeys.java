@@ -0,0 +1,62 @@
+package com.example.demo.service;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Deterministic, Firebase-path-safe keys for the index nodes kept next to the main data.
+ */
+final class IndexKeys {
+
+    private IndexKeys() {
+    }
+
+    /** Key under "wishlistIndex" shared by every listing of the same (name, author, ISBN). */
+    static String wishlistKey(String name, String author, String isbn) {
+        return hash(normalizeText(name) + "|" + normalizeText(author) + "|" + normalizeIsbn(isbn));
+    }
+
+    /** wishlistKey as it was before ISBNs were canonicalized, for migrating entries filed under it. */
+    static String legacyWishlistKey(String name, String author, String isbn) {
+        String strippedIsbn = isbn == null ? "" : isbn.replaceAll("[^0-9A-Za-z]", "").toUpperCase();
+        return hash(normalizeText(name) + "|" + normalizeText(author) + "|" + strippedIsbn);
+    }
+
+    /** Key under "listingKeys" identifying one seller's listing of an edition at a given price. */
+    static String listingKey(String ownerEmail, String isbn, String name, String author, Double price) {
+        String normalizedPrice = price == null ? "" : BigDecimal.valueOf(price).stripTrailingZeros().toPlainString();
+        return hash(normalizeText(ownerEmail) + "|" + normalizeIsbn(isbn) + "|" + normalizeText(name) + "|"
+                + normalizeText(author) + "|" + normalizedPrice);
+    }
+
+    static String normalizeText(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.trim().replaceAll("\\s+", " ").toLowerCase();
+    }
+
+    // Valid ISBNs key on their ISBN-13 form, so ISBN-10 and ISBN-13 spellings of an edition collide
+    static String normalizeIsbn(String isbn) {
+        if (isbn == null) {
+            return "";
+        }
+        String canonical = Isbn.tryCanonicalize(isbn);
+        return canonical != null ? canonical : isbn.replaceAll("[^0-9A-Za-z]", "").toUpperCase();
+    }
+
+    private static String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.demo.service;
+
+/**
+ * ISBN canonicalization: ISBN-10 and ISBN-13 input, with or without hyphens and spaces, is checked
+ * against its check digit and converted to the 13-digit form, so every printing of an edition
+ * shares one key.
+ */
+final class Isbn {
+
+    private Isbn() {
+    }
+
+    /** The canonical ISBN-13, or null for a blank value; throws IllegalArgumentException if invalid. */
+    static String canonicalize(String raw) {
+        if (raw == null || raw.isBlank()) {
+            return null;
+        }
+        String canonical = tryCanonicalize(raw);
+        if (canonical == null) {
+            throw new IllegalArgumentException("Invalid ISBN: " + raw.trim());
+        }
+        return canonical;
+    }
+
+    /** The canonical ISBN-13, or null when the value is blank or not a valid ISBN. */
+    static String tryCanonicalize(String raw) {
+        if (raw == null) {
+            return null;
+        }
+        String compact = raw.replaceAll("[\\s-]", "").toUpperCase();
+        if (compact.length() == 10 && isValidIsbn10(compact)) {
+            String body = "978" + compact.substring(0, 9);
+            return body + isbn13CheckDigit(body);
+        }
+        if (compact.length() == 13 && compact.chars().allMatch(Character::isDigit)
+                && (compact.startsWith("978") || compact.startsWith("979"))
+                && isbn13CheckDigit(compact.substring(0, 12)) == compact.charAt(12) - '0') {
+            return compact;
+        }
+        return null;
+    }
+
+    private static boolean isValidIsbn10(String isbn) {
+        int sum = 0;
+        for (int i = 0; i < 10; i++) {
+            char c = isbn.charAt(i);
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c == 'X' && i == 9) {
+                digit = 10;
+            } else {
+                return false;
+            }
+            sum += (10 - i) * digit;
+        }
+        return sum % 11 == 0;
+    }
+
+    // Weights alternate 1 and 3 over the first twelve digits
+    private static int isbn13CheckDigit(String firstTwelve) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (firstTwelve.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
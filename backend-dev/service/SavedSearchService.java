@@ -0,0 +1,304 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import com.example.demo.model.BookStatusChangedEvent;
+import com.example.demo.model.SavedSearch;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.*;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Saved searches and the alerts sent when a listing matching one becomes visible to buyers.
+ * Searches are compiled into a reverse (percolator) index: each is filed under its most selective
+ * criterion (its longest query term, else its genre, else its condition), and a book only
+ * evaluates the searches filed under the prefixes of its own words, its genre and its condition.
+ * The index follows the "savedSearches" node through a ChildEventListener, one child per user.
+ */
+@Service
+public class SavedSearchService {
+
+    private static final String MATCH_ALL = "*";
+
+    /** A saved search with its query tokenized and its filters normalized. */
+    private static class CompiledSearch {
+        final String ownerKey;
+        final SavedSearch search;
+        final List<String> terms;
+        final String genre;
+        final String condition;
+        final String indexKey;
+
+        CompiledSearch(String ownerKey, SavedSearch search) {
+            this.ownerKey = ownerKey;
+            this.search = search;
+            this.terms = BookSearchIndex.tokenize(search.getQuery());
+            this.genre = normalize(search.getGenre());
+            this.condition = normalize(search.getCondition());
+            this.indexKey = indexKey();
+        }
+
+        private String indexKey() {
+            String longest = null;
+            for (String term : terms) {
+                if (longest == null || term.length() > longest.length()) {
+                    longest = term;
+                }
+            }
+            if (longest != null) {
+                return "term:" + longest;
+            }
+            if (!genre.isEmpty()) {
+                return "genre:" + genre;
+            }
+            if (!condition.isEmpty()) {
+                return "condition:" + condition;
+            }
+            return MATCH_ALL;
+        }
+
+        boolean matches(Book book, Set<String> bookTerms) {
+            if (!genre.isEmpty() && !genre.equals(normalize(book.getGenre()))) {
+                return false;
+            }
+            if (!condition.isEmpty() && !condition.equals(normalize(book.getCondition()))) {
+                return false;
+            }
+            double price = book.getPrice() != null ? book.getPrice() : 0.0;
+            if (search.getMinPrice() != null && price < search.getMinPrice()) {
+                return false;
+            }
+            if (search.getMaxPrice() != null && price > search.getMaxPrice()) {
+                return false;
+            }
+            // Every query term must start some word of the book, as in catalog search
+            for (String term : terms) {
+                boolean found = false;
+                for (String bookTerm : bookTerms) {
+                    if (bookTerm.startsWith(term)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final DatabaseReference savedSearchRef;
+    private ChildEventListener childEventListener;
+
+    // index key -> compiled searches filed under it
+    private final Map<String, Set<CompiledSearch>> searchesByKey = new HashMap<>();
+    // user node key -> that user's compiled searches
+    private final Map<String, List<CompiledSearch>> searchesByUser = new HashMap<>();
+    private final NotificationService notificationService;
+
+    public SavedSearchService(FirebaseApp firebaseApp, NotificationService notificationService) {
+        this.savedSearchRef = FirebaseDatabase.getInstance(firebaseApp).getReference("savedSearches");
+        this.notificationService = notificationService;
+    }
+
+    @PostConstruct
+    private void init() {
+        childEventListener = savedSearchRef.addChildEventListener(new ChildEventListener() {
+            @Override
+            public void onChildAdded(DataSnapshot snapshot, String previousChildName) {
+                replaceUser(snapshot);
+            }
+
+            @Override
+            public void onChildChanged(DataSnapshot snapshot, String previousChildName) {
+                replaceUser(snapshot);
+            }
+
+            @Override
+            public void onChildRemoved(DataSnapshot snapshot) {
+                removeUser(snapshot.getKey());
+            }
+
+            @Override
+            public void onChildMoved(DataSnapshot snapshot, String previousChildName) {
+                // Order is irrelevant to the index
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                System.err.println("Saved search listener cancelled: " + error.getMessage());
+            }
+        });
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        if (childEventListener != null) {
+            savedSearchRef.removeEventListener(childEventListener);
+        }
+    }
+
+    public CompletableFuture<String> saveSearch(String userEmail, SavedSearch search) {
+        if (BookSearchIndex.tokenize(search.getQuery()).isEmpty()
+                && normalize(search.getGenre()).isEmpty() && normalize(search.getCondition()).isEmpty()
+                && search.getMinPrice() == null && search.getMaxPrice() == null) {
+            throw new IllegalArgumentException("A saved search needs a query or at least one filter");
+        }
+        String searchId = UUID.randomUUID().toString();
+        search.setSearchId(searchId);
+        search.setUserEmail(userEmail);
+        search.setCreatedAt(System.currentTimeMillis());
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        savedSearchRef.child(sanitizeEmail(userEmail)).child(searchId).setValue(search, (error, ref) -> {
+            if (error != null) {
+                future.completeExceptionally(error.toException());
+            } else {
+                future.complete(searchId);
+            }
+        });
+        return future;
+    }
+
+    public CompletableFuture<Void> deleteSearch(String userEmail, String searchId) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        savedSearchRef.child(sanitizeEmail(userEmail)).child(searchId).removeValue((error, ref) -> {
+            if (error != null) {
+                future.completeExceptionally(error.toException());
+            } else {
+                future.complete(null);
+            }
+        });
+        return future;
+    }
+
+    public synchronized List<SavedSearch> getSearches(String userEmail) {
+        List<SavedSearch> searches = new ArrayList<>();
+        for (CompiledSearch compiled : searchesByUser.getOrDefault(sanitizeEmail(userEmail), List.of())) {
+            searches.add(compiled.search);
+        }
+        searches.sort(Comparator.comparingLong(SavedSearch::getCreatedAt));
+        return searches;
+    }
+
+    @EventListener
+    public void onStatusChanged(BookStatusChangedEvent event) {
+        alertIfNewlyVisible(event.getBook(), event.getPreviousStatus(), event.getNewStatus());
+    }
+
+    /**
+     * Notifies the owners of the saved searches matching the book when the move from previousStatus
+     * to newStatus puts it in front of buyers. Returns how many users were notified.
+     */
+    public int alertIfNewlyVisible(Book book, String previousStatus, String newStatus) {
+        if (!isVisible(newStatus) || isVisible(previousStatus)) {
+            return 0;
+        }
+        Map<String, SavedSearch> matches = percolate(book);
+        for (SavedSearch search : matches.values()) {
+            notificationService.sendNotification(search.getUserEmail(), alertMessage(search, book));
+        }
+        return matches.size();
+    }
+
+    /** The first matching saved search of every user other than the book's owner. */
+    synchronized Map<String, SavedSearch> percolate(Book book) {
+        Set<String> bookTerms = new HashSet<>();
+        for (String field : new String[] {book.getName(), book.getAuthor(), book.getGenre(), book.getDescription()}) {
+            bookTerms.addAll(BookSearchIndex.tokenize(field));
+        }
+
+        List<String> probes = new ArrayList<>();
+        for (String term : bookTerms) {
+            for (int end = 1; end <= term.length(); end++) {
+                probes.add("term:" + term.substring(0, end));
+            }
+        }
+        probes.add("genre:" + normalize(book.getGenre()));
+        probes.add("condition:" + normalize(book.getCondition()));
+        probes.add(MATCH_ALL);
+
+        String bookOwner = sanitizeEmail(book.getUserEmail()).toLowerCase();
+        Map<String, SavedSearch> matches = new LinkedHashMap<>();
+        for (String probe : new LinkedHashSet<>(probes)) {
+            for (CompiledSearch candidate : searchesByKey.getOrDefault(probe, Set.of())) {
+                if (candidate.ownerKey.toLowerCase().equals(bookOwner)
+                        || matches.containsKey(candidate.ownerKey)
+                        || !candidate.matches(book, bookTerms)) {
+                    continue;
+                }
+                matches.put(candidate.ownerKey, candidate.search);
+            }
+        }
+        return matches;
+    }
+
+    private synchronized void replaceUser(DataSnapshot userSnapshot) {
+        removeUser(userSnapshot.getKey());
+        List<CompiledSearch> compiled = new ArrayList<>();
+        for (DataSnapshot searchSnapshot : userSnapshot.getChildren()) {
+            SavedSearch search = searchSnapshot.getValue(SavedSearch.class);
+            if (search == null || search.getUserEmail() == null) {
+                continue;
+            }
+            if (search.getSearchId() == null) {
+                search.setSearchId(searchSnapshot.getKey());
+            }
+            CompiledSearch entry = new CompiledSearch(userSnapshot.getKey(), search);
+            searchesByKey.computeIfAbsent(entry.indexKey, k -> new HashSet<>()).add(entry);
+            compiled.add(entry);
+        }
+        if (!compiled.isEmpty()) {
+            searchesByUser.put(userSnapshot.getKey(), compiled);
+        }
+    }
+
+    private synchronized void removeUser(String userKey) {
+        List<CompiledSearch> previous = searchesByUser.remove(userKey);
+        if (previous == null) {
+            return;
+        }
+        for (CompiledSearch entry : previous) {
+            Set<CompiledSearch> filed = searchesByKey.get(entry.indexKey);
+            if (filed != null) {
+                filed.remove(entry);
+                if (filed.isEmpty()) {
+                    searchesByKey.remove(entry.indexKey);
+                }
+            }
+        }
+    }
+
+    private static boolean isVisible(String status) {
+        return BookCatalogIndex.statusesForRole("buyer").contains(BookCatalogIndex.normalize(status));
+    }
+
+    static String alertMessage(SavedSearch search, Book book) {
+        String label = search.getQuery() != null && !search.getQuery().isBlank()
+                ? "\"" + search.getQuery().trim() + "\""
+                : "your filters";
+        return "A new listing matches your saved search " + label + ": \"" + book.getName() + "\" by "
+                + book.getAuthor() + ".";
+    }
+
+    private static String normalize(String value) {
+        return value != null ? value.trim().toLowerCase() : "";
+    }
+
+    private static String sanitizeEmail(String email) {
+        if (email == null) {
+            return "";
+        }
+        return email.replace(".", ",")
+                .replace("#", ",")
+                .replace("$", ",")
+                .replace("[", ",")
+                .replace("]", ",");
+    }
+}
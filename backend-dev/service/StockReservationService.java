@@ -0,0 +1,167 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Book;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+
+/**
+ * Soft holds on stock for books sitting in carts. Adding to a cart reserves the copies for a TTL
+ * (refreshed on every add), so a second buyer cannot put the last copy in their cart; the hold lapses
+ * on its own through an in-process timing wheel, and the cart entry is kept either way. Available-to-
+ * promise is quantity minus the copies reserved by everyone else.
+ *
+ * Reservations live in this instance's memory: they are not shared between instances and are gone
+ * after a restart, when carts fall back to the stock check done at checkout.
+ */
+@Service
+public class StockReservationService {
+
+    private static final long TICK_MILLIS = 1000;
+
+    private static final class Reservation {
+        private int quantity;
+        private final HierarchicalTimingWheel.Timeout timeout;
+
+        private Reservation(int quantity, HierarchicalTimingWheel.Timeout timeout) {
+            this.quantity = quantity;
+            this.timeout = timeout;
+        }
+    }
+
+    private final BookCatalogIndex catalogIndex;
+    private final long ttlMillis;
+    private final HierarchicalTimingWheel wheel = new HierarchicalTimingWheel("cart-reservations", TICK_MILLIS);
+
+    // bookId -> holder -> reservation, guarded by this; the per-book totals are read without locking
+    private final Map<String, Map<String, Reservation>> reservations = new HashMap<>();
+    private final Map<String, Integer> reservedTotals = new ConcurrentHashMap<>();
+
+    public StockReservationService(BookCatalogIndex catalogIndex,
+                                   @Value("${cart.reservation.ttl-seconds:900}") long ttlSeconds) {
+        this.catalogIndex = catalogIndex;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        catalogIndex.setReservationLookup(this::reservedQuantity);
+    }
+
+    /**
+     * Adds quantity to the user's hold on the book and restarts its TTL. Fails with IllegalStateException
+     * when the book is not on sale or the other holds leave too few copies for the user's total.
+     */
+    public CompletableFuture<Void> reserve(String userEmail, String bookId, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("quantity must be positive");
+        }
+        return catalogIndex.whenCaughtUp().thenRun(() -> hold(userEmail, bookId, quantity));
+    }
+
+    private synchronized void hold(String userEmail, String bookId, int quantity) {
+        Book book = catalogIndex.get(bookId);
+        if (book == null || !isOnSale(book)) {
+            throw new IllegalStateException("Book " + bookId + " is not available");
+        }
+        String holder = BookCatalogIndex.ownerKey(userEmail);
+        Map<String, Reservation> holders = reservations.computeIfAbsent(bookId, k -> new HashMap<>());
+        Reservation current = holders.get(holder);
+        int held = current != null ? current.quantity : 0;
+        int available = book.getQuantity() - (reservedQuantity(bookId) - held);
+        if (held + quantity > available) {
+            if (holders.isEmpty()) {
+                reservations.remove(bookId);
+            }
+            throw new IllegalStateException("Only " + Math.max(0, available) + " copies of " + bookId
+                    + " can be reserved");
+        }
+        replace(bookId, holder, current, held + quantity);
+    }
+
+    /** Gives back up to quantity copies of the user's hold, keeping the TTL of what is left. */
+    public synchronized void release(String userEmail, String bookId, int quantity) {
+        Map<String, Reservation> holders = reservations.get(bookId);
+        String holder = BookCatalogIndex.ownerKey(userEmail);
+        Reservation current = holders != null ? holders.get(holder) : null;
+        if (current == null) {
+            return;
+        }
+        if (current.quantity > quantity) {
+            current.quantity -= quantity;
+            adjustTotal(bookId, -quantity);
+        } else {
+            current.timeout.cancel();
+            remove(bookId, holder, current);
+        }
+    }
+
+    /** Drops the user's whole hold on the book, e.g. once it has been bought. */
+    public synchronized void releaseAll(String userEmail, String bookId) {
+        Map<String, Reservation> holders = reservations.get(bookId);
+        String holder = BookCatalogIndex.ownerKey(userEmail);
+        Reservation current = holders != null ? holders.get(holder) : null;
+        if (current != null) {
+            current.timeout.cancel();
+            remove(bookId, holder, current);
+        }
+    }
+
+    /** Copies of the book held by all live reservations. */
+    public int reservedQuantity(String bookId) {
+        return reservedTotals.getOrDefault(bookId, 0);
+    }
+
+    /** Copies of the book held by other users, i.e. what stands between this user and the stock. */
+    public synchronized int reservedByOthers(String userEmail, String bookId) {
+        Map<String, Reservation> holders = reservations.get(bookId);
+        Reservation own = holders != null ? holders.get(BookCatalogIndex.ownerKey(userEmail)) : null;
+        return reservedQuantity(bookId) - (own != null ? own.quantity : 0);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        wheel.stop();
+    }
+
+    private void replace(String bookId, String holder, Reservation current, int quantity) {
+        if (current != null) {
+            current.timeout.cancel();
+        }
+        Reservation[] scheduled = new Reservation[1];
+        HierarchicalTimingWheel.Timeout timeout = wheel.schedule(ttlMillis, () -> expire(bookId, holder, scheduled[0]));
+        scheduled[0] = new Reservation(quantity, timeout);
+        reservations.computeIfAbsent(bookId, k -> new HashMap<>()).put(holder, scheduled[0]);
+        adjustTotal(bookId, quantity - (current != null ? current.quantity : 0));
+    }
+
+    // Runs on the wheel's thread; a hold that was replaced or released in the meantime is left alone
+    private synchronized void expire(String bookId, String holder, Reservation reservation) {
+        Map<String, Reservation> holders = reservations.get(bookId);
+        if (holders != null && holders.get(holder) == reservation) {
+            remove(bookId, holder, reservation);
+        }
+    }
+
+    private void remove(String bookId, String holder, Reservation reservation) {
+        Map<String, Reservation> holders = reservations.get(bookId);
+        holders.remove(holder);
+        if (holders.isEmpty()) {
+            reservations.remove(bookId);
+        }
+        adjustTotal(bookId, -reservation.quantity);
+    }
+
+    private void adjustTotal(String bookId, int delta) {
+        reservedTotals.compute(bookId, (k, total) -> {
+            int updated = (total != null ? total : 0) + delta;
+            return updated > 0 ? updated : null;
+        });
+    }
+
+    private boolean isOnSale(Book book) {
+        return BookCatalogIndex.statusesForRole("buyer").contains(BookCatalogIndex.normalize(book.getStatus()));
+    }
+}
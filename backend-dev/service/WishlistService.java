@@ -6,17 +6,137 @@ import com.google.firebase.FirebaseApp;
 import com.google.firebase.database.*;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import javax.annotation.PostConstruct;
 
 @Service
 public class WishlistService {
+    private final DatabaseReference rootRef;
     private final DatabaseReference wishlistRef;
+    private final DatabaseReference wishlistIndexRef;
 
     public WishlistService(FirebaseApp firebaseApp) {
-        this.wishlistRef = FirebaseDatabase.getInstance(firebaseApp).getReference("wishlists");
+        this.rootRef = FirebaseDatabase.getInstance(firebaseApp).getReference();
+        this.wishlistRef = rootRef.child("wishlists");
+        this.wishlistIndexRef = rootRef.child("wishlistIndex");
+    }
+
+    // Version of the wishlistIndex key scheme; 2 keys ISBNs on their canonical ISBN-13 form
+    private static final int INDEX_VERSION = 2;
+
+    // Rebuilds the reverse index from the wishlists whenever it was written under an older key scheme
+    @PostConstruct
+    private void init() {
+        rootRef.child("indexVersions").child("wishlistIndex").addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot versionSnapshot) {
+                Integer version = versionSnapshot.getValue(Integer.class);
+                if (version != null && version >= INDEX_VERSION) {
+                    return;
+                }
+                wishlistRef.addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(DataSnapshot wishlistSnapshot) {
+                        // Writes and deletes single entries only, so wishes added meanwhile keep theirs
+                        Map<String, Object> updates = new HashMap<>();
+                        for (DataSnapshot userSnap : wishlistSnapshot.getChildren()) {
+                            for (DataSnapshot wishSnap : userSnap.getChildren()) {
+                                WishlistItem item = wishSnap.getValue(WishlistItem.class);
+                                if (item == null || item.getBook() == null || item.getBookId() == null) {
+                                    continue;
+                                }
+                                Book book = item.getBook();
+                                String path = indexPath(book, userSnap.getKey(), item.getBookId());
+                                String legacyPath = "wishlistIndex/"
+                                        + IndexKeys.legacyWishlistKey(book.getName(), book.getAuthor(), book.getIsbn())
+                                        + "/" + userSnap.getKey() + "/" + item.getBookId();
+                                if (!legacyPath.equals(path)) {
+                                    updates.put(legacyPath, null);
+                                }
+                                updates.put(path, item.getUserEmail());
+                            }
+                        }
+                        rootRef.updateChildren(updates, (error, ref) -> {
+                            if (error != null) {
+                                System.err.println("Wishlist index rebuild failed: " + error.getMessage());
+                                return;
+                            }
+                            rootRef.child("indexVersions").child("wishlistIndex").setValueAsync(INDEX_VERSION);
+                        });
+                    }
+
+                    @Override
+                    public void onCancelled(DatabaseError error) {
+                        System.err.println("Wishlist index backfill failed: " + error.getMessage());
+                    }
+                });
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                System.err.println("Wishlist index check failed: " + error.getMessage());
+            }
+        });
+    }
+
+    private String indexPath(Book book, String safeEmail, String bookId) {
+        return "wishlistIndex/" + IndexKeys.wishlistKey(book.getName(), book.getAuthor(), book.getIsbn())
+                + "/" + safeEmail + "/" + bookId;
+    }
+
+    /**
+     * Emails of the users whose wishlist holds a book with the same name, author and ISBN.
+     */
+    public CompletableFuture<Set<String>> findSubscribers(String name, String author, String isbn) {
+        CompletableFuture<Set<String>> future = new CompletableFuture<>();
+
+        wishlistIndexRef.child(IndexKeys.wishlistKey(name, author, isbn))
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(DataSnapshot snapshot) {
+                        Set<String> emails = new LinkedHashSet<>();
+                        for (DataSnapshot userSnap : snapshot.getChildren()) {
+                            for (DataSnapshot entry : userSnap.getChildren()) {
+                                String email = entry.getValue(String.class);
+                                if (email != null) {
+                                    emails.add(email);
+                                    break;
+                                }
+                            }
+                        }
+                        future.complete(emails);
+                    }
+
+                    @Override
+                    public void onCancelled(DatabaseError error) {
+                        future.completeExceptionally(error.toException());
+                    }
+                });
+
+        return future;
+    }
+
+    /**
+     * Subscribers for several books at once, keyed by bookId. The index reads run in parallel.
+     */
+    public CompletableFuture<Map<String, Set<String>>> findSubscribersForBooks(Collection<Book> books) {
+        Map<String, CompletableFuture<Set<String>>> lookups = new HashMap<>();
+        Map<String, String> keyByBookId = new HashMap<>();
+        for (Book book : books) {
+            String key = IndexKeys.wishlistKey(book.getName(), book.getAuthor(), book.getIsbn());
+            keyByBookId.put(book.getBookId(), key);
+            lookups.computeIfAbsent(key, k -> findSubscribers(book.getName(), book.getAuthor(), book.getIsbn()));
+        }
+
+        return CompletableFuture.allOf(lookups.values().toArray(new CompletableFuture[0]))
+                .thenApply(unused -> {
+                    Map<String, Set<String>> subscribersByBookId = new HashMap<>();
+                    for (Map.Entry<String, String> entry : keyByBookId.entrySet()) {
+                        subscribersByBookId.put(entry.getKey(), lookups.get(entry.getValue()).join());
+                    }
+                    return subscribersByBookId;
+                });
     }
 
     public CompletableFuture<Void> addToWishlist(String userEmail, String bookId) {
@@ -55,7 +175,12 @@ public class WishlistService {
                         newItem.setBookId(bookId); // Set bookId separately
                         newItem.setAddedAt(System.currentTimeMillis());
 
-                        wishlistRef.child(safeEmail).child(id).setValue(newItem, (error, ref) -> {
+                        // Item and reverse index entry are written in one multi-path update
+                        Map<String, Object> updates = new HashMap<>();
+                        updates.put("wishlists/" + safeEmail + "/" + id, newItem);
+                        updates.put(indexPath(book, safeEmail, bookId), userEmail);
+
+                        rootRef.updateChildren(updates, (error, ref) -> {
                             if (error != null) {
                                 future.completeExceptionally(error.toException());
                             } else {
@@ -91,7 +216,13 @@ public class WishlistService {
                 for (DataSnapshot child : snapshot.getChildren()) {
                     WishlistItem item = child.getValue(WishlistItem.class);
                     if (item != null && bookId.equals(item.getBookId())) {
-                        child.getRef().removeValue((error, ref) -> {
+                        Map<String, Object> updates = new HashMap<>();
+                        updates.put("wishlists/" + safeEmail + "/" + child.getKey(), null);
+                        if (item.getBook() != null) {
+                            updates.put(indexPath(item.getBook(), safeEmail, bookId), null);
+                        }
+
+                        rootRef.updateChildren(updates, (error, ref) -> {
                             if (error != null) {
                                 future.completeExceptionally(error.toException());
                             } else {